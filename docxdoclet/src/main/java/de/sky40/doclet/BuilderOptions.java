@@ -1,18 +1,51 @@
 package de.sky40.doclet;
 
+import de.sky40.docxreader.Log;
+import de.sky40.docxreader.PackageFormat;
+import de.sky40.docxreader.ZipCompression;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
 /**
- * This class contains the options of the document creation process.
+ * This class contains the options of the document creation process. The
+ * options are parsed and validated once on creation.
+ *
+ * Immutable.
  */
 public class BuilderOptions {
 
   /**
-   * Options will be taken from the doclet configuration on start up. (General
-   * usage: -option1 value1 -option2 value2 ...)
-   *
-   * @param options The options as provided in the doclet start
+   * The access levels of the documented members.
    */
-  public BuilderOptions(String[][] options) {
-    this.options = options;
+  public enum AccessLevel {
+    PUBLIC, PRIVATE
+  }
+
+  /**
+   * The modes for missing doc comments.
+   */
+  public enum MissingDocs {
+    SHOW, HIDE
+  }
+
+  /**
+   * The modes of writing the output file.
+   */
+  public enum WriteMode {
+    MEMORY, STREAM, PIPELINE
   }
 
   /**
@@ -48,12 +81,170 @@ public class BuilderOptions {
    */
   public static final String OPTION_MISSING_DOC = "missing";
 
+  /**
+   * The option name for the directory of the template cache (e.g.
+   * -templatecache "c:/cache"). The styles of a template are extracted only
+   * once and taken from the cache as long as the template does not change.
+   * No cache is used if the option is missing.
+   */
+  public static final String OPTION_TEMPLATE_CACHE = "templatecache";
+
+  /**
+   * The option name for the write mode (e.g. -writemode STREAM); Valid values
+   * are MEMORY, STREAM and PIPELINE. In STREAM mode the document is written to
+   * the output file while it is created instead of being kept in memory. In
+   * PIPELINE mode it is streamed as well, but the package chapters are
+   * serialized and compressed on a background thread while the next chapter
+   * is rendered.
+   */
+  public static final String OPTION_WRITE_MODE = "writemode";
+
+  /**
+   * The option name for the number of threads to render the class pages with
+   * (e.g. -threads 8). Defaults to 1, i.e. sequential rendering.
+   */
+  public static final String OPTION_THREADS = "threads";
+
+  /**
+   * The option name for the number of rendered package chapters which may
+   * wait for the background thread in write mode PIPELINE (e.g.
+   * -pipelinedepth 4). Defaults to 2.
+   */
+  public static final String OPTION_PIPELINE_DEPTH = "pipelinedepth";
+
+  /**
+   * The option name for a file to save the extracted API model to (e.g.
+   * -savemodel "c:/api.model"). The saved model can be rendered again without
+   * javadoc by {@link DocxDoclet#main(java.lang.String[])}.
+   */
+  public static final String OPTION_SAVE_MODEL = "savemodel";
+
+  /**
+   * The option name for a saved API model to render instead of the javadoc
+   * model (e.g. -model "c:/api.model"). Used when the doclet is run by
+   * {@link DocxDoclet#main(java.lang.String[])}.
+   */
+  public static final String OPTION_MODEL = "model";
+
+  /**
+   * The option name for the directory of the fragment cache (e.g.
+   * -fragmentcache "c:/cache"). Class pages are taken from the cache as long
+   * as the class, the template and the options do not change. Requires the
+   * write mode STREAM or PIPELINE. No cache is used if the option is missing.
+   */
+  public static final String OPTION_FRAGMENT_CACHE = "fragmentcache";
+
+  /**
+   * The option name for the maximum size of the fragment cache in MB (e.g.
+   * -fragmentcachesize 100). Defaults to 256.
+   */
+  public static final String OPTION_FRAGMENT_CACHE_SIZE = "fragmentcachesize";
+
+  /**
+   * The option name for a file with further options (e.g. -optionsfile
+   * "c:/docxdoclet.properties"). A file ending with .properties holds the
+   * options as properties with the option names as keys, any other file
+   * holds them like the command line (-option1 value1 -option2 value2 ...,
+   * # starts a comment up to the end of the line, values with spaces are put
+   * in double quotes).
+   * Options given directly take precedence over the options in the file.
+   */
+  public static final String OPTION_OPTIONS_FILE = "optionsfile";
+
+  /**
+   * The option name for the patterns of the classes to document (e.g.
+   * -include "com.foo.**,com.bar.*"). The patterns are separated by commas,
+   * see {@link ClassFilter} for their syntax. All classes are documented if
+   * the option is missing.
+   */
+  public static final String OPTION_INCLUDE = "include";
+
+  /**
+   * The option name for the patterns of the classes not to document, even if
+   * they are included (e.g. -exclude "com.foo.internal.**").
+   */
+  public static final String OPTION_EXCLUDE = "exclude";
+
+  /**
+   * The option name for the annotations of the classes not to document (e.g.
+   * -excludeannotations "Internal,com.foo.Beta"). The annotations are given
+   * by their qualified or simple names, separated by commas.
+   */
+  public static final String OPTION_EXCLUDE_ANNOTATIONS = "excludeannotations";
+
+  /**
+   * The option name for the packages whose classes are written without the
+   * package in signatures (e.g. -shortpackages "java.lang,java.util"). The
+   * packages are separated by commas, subpackages are not shortened. Defaults
+   * to java.lang, java.util, java.io, java.nio and the documented packages;
+   * an empty value shortens no package. The types are rendered when the API
+   * model is extracted, a saved model keeps the packages it was saved with.
+   */
+  public static final String OPTION_SHORT_PACKAGES = "shortpackages";
+
+  /**
+   * The option name for the number of comments whose spans are kept in
+   * memory, so repeated comments are split only once (e.g.
+   * -commentcachesize 10000). Defaults to 4096, 0 disables the cache.
+   */
+  public static final String OPTION_COMMENT_CACHE_SIZE = "commentcachesize";
+
+  /**
+   * The option name for the level of the messages written to the console
+   * (e.g. -verbosity DEBUG); Valid values are ERROR, WARN, INFO and DEBUG.
+   * Defaults to INFO.
+   */
+  public static final String OPTION_VERBOSITY = "verbosity";
+
+  /**
+   * The option name for a file to write the profile of the run to as JSON
+   * (e.g. -profile "target/docxdoclet-profile.json"). The profile is always
+   * written to the log at the end of the run.
+   */
+  public static final String OPTION_PROFILE = "profile";
+
+  /**
+   * The option name for the compression of the main document (e.g.
+   * -compression 1); Valid values are STORED (no compression, e.g. for fast
+   * previews), DEFAULT and the deflate levels 0 to 9. Defaults to DEFAULT.
+   */
+  public static final String OPTION_COMPRESSION = "compression";
+
+  /**
+   * The option name for the number of threads deflating the main document in
+   * independent blocks (e.g. -deflatethreads 4). Defaults to 1, i.e. the
+   * document is deflated on the writing thread.
+   */
+  public static final String OPTION_DEFLATE_THREADS = "deflatethreads";
+
+  /**
+   * The option name for reproducible output (e.g. -reproducible true): the
+   * same content is written to the same bytes and an output file with the
+   * same content is not rewritten. Defaults to false.
+   */
+  public static final String OPTION_REPRODUCIBLE = "reproducible";
+
+  /**
+   * The option name for the format of the output (e.g. -format FLAT_OPC);
+   * Valid values are DOCX, FLAT_OPC (a single XML file) and DIRECTORY (a
+   * directory with a file per part, of which only the changed ones are
+   * rewritten). Defaults to DOCX.
+   */
+  public static final String OPTION_FORMAT = "format";
+
+  public static final String COMPRESSION_STORED = "STORED";
+  public static final String COMPRESSION_DEFAULT = "DEFAULT";
+
   public static final String ACCESS_LEVEL_PUBLIC = "PUBLIC";
   public static final String ACCESS_LEVEL_PRIVATE = "PRIVATE";
 
   public static final String MISSING_SHOW = "SHOW";
   public static final String MISSING_HIDE = "HIDE";
 
+  public static final String WRITE_MODE_MEMORY = "MEMORY";
+  public static final String WRITE_MODE_STREAM = "STREAM";
+  public static final String WRITE_MODE_PIPELINE = "PIPELINE";
+
   /**
    * The default option for the acces level if none is supplied.
    */
@@ -79,8 +270,52 @@ public class BuilderOptions {
   public static final String NOTE_MISSING_COMMENT_ON_PARAMETER = "[missing comment on parameter]";
   public static final String NOTE_MISSING_COMMENT_ON_RETURN_VALUE = "[missing comment on return value]";
 
+  /**
+   * The number of command line arguments of every option including the option
+   * name itself.
+   */
+  private static final Map<String, Integer> OPTION_LENGTHS = new HashMap<>();
+
+  static {
+    for (String option : new String[]{OPTION_OUTPUT_FILENAME, OPTION_TEMPLATE_FILENAME, OPTION_ACCESS_LEVEL,
+      OPTION_MISSING_DOC, OPTION_TEMPLATE_CACHE, OPTION_WRITE_MODE, OPTION_THREADS, OPTION_SAVE_MODEL,
+      OPTION_MODEL, OPTION_FRAGMENT_CACHE, OPTION_FRAGMENT_CACHE_SIZE, OPTION_OPTIONS_FILE, OPTION_INCLUDE,
+      OPTION_EXCLUDE, OPTION_EXCLUDE_ANNOTATIONS, OPTION_SHORT_PACKAGES, OPTION_COMMENT_CACHE_SIZE,
+      OPTION_VERBOSITY, OPTION_PROFILE, OPTION_COMPRESSION, OPTION_DEFLATE_THREADS,
+      OPTION_REPRODUCIBLE, OPTION_FORMAT, OPTION_PIPELINE_DEPTH}) {
+      OPTION_LENGTHS.put("-" + option, 2);
+    }
+  }
+
   private final String[][] options;
 
+  /**
+   * The values of the supported options given, by option name.
+   */
+  private final Map<String, String> values;
+
+  private final File templateFile;
+  private final File outputFile;
+  private final AccessLevel accessLevel;
+  private final MissingDocs missingDocs;
+  private final File templateCacheDirectory;
+  private final WriteMode writeMode;
+  private final int threads;
+  private final int pipelineDepth;
+  private final File saveModelFile;
+  private final File modelFile;
+  private final File fragmentCacheDirectory;
+  private final long fragmentCacheSize;
+  private final ClassFilter classFilter;
+  private final List<String> shortPackages;
+  private final boolean shortenDocumentedPackages;
+  private final int commentCacheSize;
+  private final Log.Level verbosity;
+  private final File profileFile;
+  private final ZipCompression compression;
+  private final boolean reproducible;
+  private final PackageFormat format;
+
   static int SIZE_COVER = 10;
   static int SIZE_CHAPTER_TITLE = 20;
   static int SIZE_TITLE_PARAGRAPH = 14;
@@ -88,8 +323,62 @@ public class BuilderOptions {
   static int SIZE_SECTION_PARAGRAPH = 10;
   static int SIZE_DEFAULT = 10;
 
+  /**
+   * Creates the default options.
+   */
   public BuilderOptions() {
-    this.options = null;
+    this(new String[0][]);
+  }
+
+  /**
+   * Options will be taken from the doclet configuration on start up. (General
+   * usage: -option1 value1 -option2 value2 ...). Options not supported by the
+   * doclet are ignored.
+   *
+   * @param options The options as provided in the doclet start
+   * @throws IllegalArgumentException If an option has an invalid value or the
+   * options file can not be read.
+   */
+  public BuilderOptions(String[][] options) {
+    this.options = options;
+
+    Map<String, String> values = new HashMap<>();
+    // the options file first, so the options given directly take precedence
+    for (String[] opt : options) {
+      if (opt[0].equals("-" + OPTION_OPTIONS_FILE) && 1 < opt.length) {
+        readOptionsFile(new File(opt[1]), values);
+      }
+    }
+    for (String[] opt : options) {
+      if (isSupportedOption(opt[0]) && 1 < opt.length) {
+        values.put(opt[0].substring(1), opt[1]);
+      }
+    }
+    this.values = Collections.unmodifiableMap(values);
+
+    this.templateFile = new File(values.getOrDefault(OPTION_TEMPLATE_FILENAME, OPTION_DEFAULT_TEMPLATE_FILENAME));
+    this.outputFile = new File(values.getOrDefault(OPTION_OUTPUT_FILENAME, OPTION_DEFAULT_OUTPUT_FILENAME));
+    this.accessLevel = parseEnum(AccessLevel.class, values, OPTION_ACCESS_LEVEL, AccessLevel.PUBLIC);
+    this.missingDocs = parseEnum(MissingDocs.class, values, OPTION_MISSING_DOC, MissingDocs.SHOW);
+    this.templateCacheDirectory = parseFile(values, OPTION_TEMPLATE_CACHE);
+    this.writeMode = parseEnum(WriteMode.class, values, OPTION_WRITE_MODE, WriteMode.MEMORY);
+    this.threads = (int) parseNumber(values, OPTION_THREADS, 1, 1, Integer.MAX_VALUE);
+    this.pipelineDepth = (int) parseNumber(values, OPTION_PIPELINE_DEPTH, 2, 1, Integer.MAX_VALUE);
+    this.saveModelFile = parseFile(values, OPTION_SAVE_MODEL);
+    this.modelFile = parseFile(values, OPTION_MODEL);
+    this.fragmentCacheDirectory = parseFile(values, OPTION_FRAGMENT_CACHE);
+    this.fragmentCacheSize = parseNumber(values, OPTION_FRAGMENT_CACHE_SIZE, 256, 0, Long.MAX_VALUE / (1024 * 1024)) * 1024 * 1024;
+    this.classFilter = new ClassFilter(parseList(values, OPTION_INCLUDE), parseList(values, OPTION_EXCLUDE),
+            parseList(values, OPTION_EXCLUDE_ANNOTATIONS));
+    this.shortPackages = values.containsKey(OPTION_SHORT_PACKAGES)
+            ? Collections.unmodifiableList(parseList(values, OPTION_SHORT_PACKAGES)) : TypeRenderer.DEFAULT_SHORTENED_PACKAGES;
+    this.shortenDocumentedPackages = !values.containsKey(OPTION_SHORT_PACKAGES);
+    this.commentCacheSize = (int) parseNumber(values, OPTION_COMMENT_CACHE_SIZE, 4096, 0, Integer.MAX_VALUE);
+    this.verbosity = parseEnum(Log.Level.class, values, OPTION_VERBOSITY, Log.Level.INFO);
+    this.profileFile = parseFile(values, OPTION_PROFILE);
+    this.compression = parseCompression(values);
+    this.reproducible = parseBoolean(values, OPTION_REPRODUCIBLE, false);
+    this.format = parseEnum(PackageFormat.class, values, OPTION_FORMAT, PackageFormat.DOCX);
   }
 
   /**
@@ -98,7 +387,10 @@ public class BuilderOptions {
    * @param name The name of the option to find.
    * @return the value of the option or an empty string if the option does not
    * exist.
+   * @deprecated Use the typed getter of the option, e.g.
+   * {@link #getOutputFile()}.
    */
+  @Deprecated
   public String getOption(String name) {
     return getOption(name, "");
   }
@@ -110,14 +402,26 @@ public class BuilderOptions {
    * @param defaultValue The default value if no option with name exists.
    * @return the value of the option or a default value if the option does not
    * exist.
+   * @deprecated Use the typed getter of the option, e.g.
+   * {@link #getOutputFile()}.
    */
+  @Deprecated
   public String getOption(String name, String defaultValue) {
-    for (String[] opt : options) {
-      if (opt[0].equals("-" + name)) {
-        return opt[1];
-      }
+    if (!values.containsKey(name)) {
+      return defaultValue;
+    }
+    switch (name) {
+      case OPTION_TEMPLATE_FILENAME:
+        return getTemplateFile().getPath();
+      case OPTION_OUTPUT_FILENAME:
+        return getOutputFile().getPath();
+      case OPTION_ACCESS_LEVEL:
+        return getAccessLevel().name();
+      case OPTION_MISSING_DOC:
+        return getMissingDocs().name();
+      default:
+        return values.get(name);
     }
-    return defaultValue;
   }
 
   /**
@@ -136,14 +440,40 @@ public class BuilderOptions {
    * @return
    */
   public static boolean isSupportedOption(String option) {
-    switch (option) {
-      case "-" + OPTION_OUTPUT_FILENAME:
-      case "-" + OPTION_TEMPLATE_FILENAME:
-      case "-" + OPTION_ACCESS_LEVEL:
-      case "-" + OPTION_MISSING_DOC:
-        return true;
-    }
-    return false;
+    return OPTION_LENGTHS.containsKey(option);
+  }
+
+  /**
+   * Gets the number of command line arguments of an option.
+   *
+   * @param option The option including the leading '-'.
+   * @return The number of arguments including the option name itself, or 0 if
+   * the option is not supported.
+   */
+  public static int getOptionLength(String option) {
+    return OPTION_LENGTHS.getOrDefault(option, 0);
+  }
+
+  /**
+   * The template file to take the styles from.
+   *
+   * @return the template file.
+   */
+  public File getTemplateFile() {
+    return templateFile;
+  }
+
+  /**
+   * The file to write the document to.
+   *
+   * @return the output file.
+   */
+  public File getOutputFile() {
+    return outputFile;
+  }
+
+  public AccessLevel getAccessLevel() {
+    return accessLevel;
   }
 
   /**
@@ -152,8 +482,7 @@ public class BuilderOptions {
    * @return True, if level is public.
    */
   public boolean isAccessLevelPublic() {
-    String level = getOption(OPTION_ACCESS_LEVEL, ACCESS_LEVEL_PUBLIC);
-    return ACCESS_LEVEL_PUBLIC.equals(level);
+    return accessLevel == AccessLevel.PUBLIC;
   }
 
   /**
@@ -163,8 +492,11 @@ public class BuilderOptions {
    * @return true, if level is private.
    */
   public boolean isAccessLevelPrivate() {
-    String level = getOption(OPTION_ACCESS_LEVEL, ACCESS_LEVEL_PUBLIC);
-    return ACCESS_LEVEL_PRIVATE.equals(level);
+    return accessLevel == AccessLevel.PRIVATE;
+  }
+
+  public MissingDocs getMissingDocs() {
+    return missingDocs;
   }
 
   /**
@@ -173,8 +505,319 @@ public class BuilderOptions {
    * @return true, if is showing missing docs.
    */
   public boolean isShowMissingDocs() {
-    String missing = getOption(OPTION_MISSING_DOC, MISSING_SHOW);
-    return MISSING_SHOW.equals(missing);
+    return missingDocs == MissingDocs.SHOW;
   }
 
+  /**
+   * The directory of the template cache.
+   *
+   * @return the directory or null if no template cache is used.
+   */
+  public File getTemplateCacheDirectory() {
+    return templateCacheDirectory;
+  }
+
+  public WriteMode getWriteMode() {
+    return writeMode;
+  }
+
+  /**
+   * Indicates if the document shall be written to the output file while it is
+   * created.
+   *
+   * @return true, if write mode is stream or pipeline.
+   */
+  public boolean isStreaming() {
+    return writeMode == WriteMode.STREAM || writeMode == WriteMode.PIPELINE;
+  }
+
+  /**
+   * Indicates if the package chapters shall be written on a background
+   * thread while the next chapter is rendered.
+   *
+   * @return true, if write mode is pipeline.
+   */
+  public boolean isPipelined() {
+    return writeMode == WriteMode.PIPELINE;
+  }
+
+  /**
+   * Gets the number of threads to render the class pages with.
+   *
+   * @return the number of threads, 1 if the option is missing.
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Gets the number of rendered package chapters which may wait for the
+   * background thread.
+   *
+   * @return the number of chapters, 2 if the option is missing.
+   */
+  public int getPipelineDepth() {
+    return pipelineDepth;
+  }
+
+  /**
+   * The file to save the extracted API model to.
+   *
+   * @return the file or null if the model is not saved.
+   */
+  public File getSaveModelFile() {
+    return saveModelFile;
+  }
+
+  /**
+   * The saved API model to render.
+   *
+   * @return the file or null if no model was given.
+   */
+  public File getModelFile() {
+    return modelFile;
+  }
+
+  /**
+   * The directory of the fragment cache.
+   *
+   * @return the directory or null if no fragment cache is used.
+   */
+  public File getFragmentCacheDirectory() {
+    return fragmentCacheDirectory;
+  }
+
+  /**
+   * Gets the maximum size of the fragment cache.
+   *
+   * @return the size in bytes, 256 MB if the option is missing.
+   */
+  public long getFragmentCacheSize() {
+    return fragmentCacheSize;
+  }
+
+  /**
+   * The filter of the classes to document, compiled from the include and
+   * exclude options.
+   *
+   * @return the filter, accepting every class if there are no such options.
+   */
+  public ClassFilter getClassFilter() {
+    return classFilter;
+  }
+
+  /**
+   * The packages whose classes are written without the package in
+   * signatures.
+   *
+   * @return the package names.
+   */
+  public List<String> getShortPackages() {
+    return shortPackages;
+  }
+
+  /**
+   * Indicates if the classes of the documented packages are written without
+   * the package in signatures as well, i.e. if no short packages are given.
+   *
+   * @return true to shorten the documented packages.
+   */
+  public boolean isShortenDocumentedPackages() {
+    return shortenDocumentedPackages;
+  }
+
+  /**
+   * Gets the maximum number of comments in the comment cache.
+   *
+   * @return the number of comments, 4096 if the option is missing.
+   */
+  public int getCommentCacheSize() {
+    return commentCacheSize;
+  }
+
+  /**
+   * The level of the messages written to the console.
+   *
+   * @return the level, INFO if the option is missing.
+   */
+  public Log.Level getVerbosity() {
+    return verbosity;
+  }
+
+  /**
+   * The file to write the profile of the run to as JSON.
+   *
+   * @return the file or null if the profile is only logged.
+   */
+  public File getProfileFile() {
+    return profileFile;
+  }
+
+  /**
+   * The compression of the main document.
+   *
+   * @return the compression, deflated with the default level on one thread
+   * if the options are missing.
+   */
+  public ZipCompression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Indicates if the output is reproducible.
+   *
+   * @return true if the same content is written to the same bytes and an
+   * unchanged output file is left untouched.
+   */
+  public boolean isReproducible() {
+    return reproducible;
+  }
+
+  /**
+   * Gets the format of the output.
+   *
+   * @return The format, DOCX if the option is missing.
+   */
+  public PackageFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * Reads the options of an options file.
+   *
+   * @param file The file.
+   * @param values The values by option name to add the options to.
+   */
+  private static void readOptionsFile(File file, Map<String, String> values) {
+    try {
+      if (file.getName().endsWith(".properties")) {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+          properties.load(in);
+        }
+        for (String name : properties.stringPropertyNames()) {
+          String option = name.startsWith("-") ? name : "-" + name;
+          putFileOption(file, option, properties.getProperty(name).trim(), values);
+        }
+      } else {
+        try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+          StreamTokenizer tokenizer = new StreamTokenizer(in);
+          tokenizer.resetSyntax();
+          tokenizer.wordChars(0x21, 0xff);
+          tokenizer.whitespaceChars(0, ' ');
+          tokenizer.quoteChar('"');
+          tokenizer.commentChar('#');
+          String option = null;
+          while (tokenizer.nextToken() != StreamTokenizer.TT_EOF) {
+            if (option == null) {
+              option = tokenizer.sval;
+            } else {
+              putFileOption(file, option, tokenizer.sval, values);
+              option = null;
+            }
+          }
+          if (option != null) {
+            throw new IllegalArgumentException("Missing value of option " + option + " in " + file + ".");
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not read options file " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  private static void putFileOption(File file, String option, String value, Map<String, String> values) {
+    if (!isSupportedOption(option) || option.equals("-" + OPTION_OPTIONS_FILE)) {
+      throw new IllegalArgumentException("Unsupported option " + option + " in " + file + ".");
+    }
+    values.put(option.substring(1), value);
+  }
+
+  private static <E extends Enum<E>> E parseEnum(Class<E> type, Map<String, String> values, String name, E defaultValue) {
+    String value = values.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      StringBuilder valid = new StringBuilder();
+      for (E constant : type.getEnumConstants()) {
+        valid.append(valid.length() == 0 ? "" : ", ").append(constant.name());
+      }
+      throw new IllegalArgumentException("Invalid value '" + value + "' of option -" + name + ", valid values are " + valid + ".");
+    }
+  }
+
+  private static long parseNumber(Map<String, String> values, String name, long defaultValue, long min, long max) {
+    String value = values.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long number = Long.parseLong(value.trim());
+      if (number < min || max < number) {
+        throw new NumberFormatException();
+      }
+      return number;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value '" + value + "' of option -" + name
+              + ", expected a number from " + min + " to " + max + ".");
+    }
+  }
+
+  private static boolean parseBoolean(Map<String, String> values, String name, boolean defaultValue) {
+    String value = values.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    switch (value.trim().toLowerCase(Locale.ROOT)) {
+      case "true":
+        return true;
+      case "false":
+        return false;
+      default:
+        throw new IllegalArgumentException("Invalid value '" + value + "' of option -" + name + ", valid values are true, false.");
+    }
+  }
+
+  private static List<String> parseList(Map<String, String> values, String name) {
+    List<String> list = new ArrayList<>();
+    String value = values.get(name);
+    if (value != null) {
+      for (String element : value.split(",")) {
+        if (!element.trim().isEmpty()) {
+          list.add(element.trim());
+        }
+      }
+    }
+    return list;
+  }
+
+  private static ZipCompression parseCompression(Map<String, String> values) {
+    String value = values.getOrDefault(OPTION_COMPRESSION, COMPRESSION_DEFAULT).trim().toUpperCase(Locale.ROOT);
+    int deflateThreads = (int) parseNumber(values, OPTION_DEFLATE_THREADS, 1, 1, Integer.MAX_VALUE);
+    if (value.equals(COMPRESSION_STORED)) {
+      return ZipCompression.stored();
+    }
+    if (value.equals(COMPRESSION_DEFAULT)) {
+      return ZipCompression.deflated(Deflater.DEFAULT_COMPRESSION, deflateThreads);
+    }
+    try {
+      int level = Integer.parseInt(value);
+      if (0 <= level && level <= 9) {
+        return ZipCompression.deflated(level, deflateThreads);
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("Invalid value '" + values.get(OPTION_COMPRESSION) + "' of option -"
+            + OPTION_COMPRESSION + ", valid values are " + COMPRESSION_STORED + ", " + COMPRESSION_DEFAULT
+            + " and the levels 0 to 9.");
+  }
+
+  private static File parseFile(Map<String, String> values, String name) {
+    String value = values.get(name);
+    return value == null || value.isEmpty() ? null : new File(value);
+  }
 }
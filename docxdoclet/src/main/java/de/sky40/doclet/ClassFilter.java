@@ -0,0 +1,263 @@
+package de.sky40.doclet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which classes are documented by include and exclude patterns and
+ * by excluded annotations.
+ *
+ * The patterns are globs on the qualified class name, split into the segments
+ * of the package name followed by the class name, which has a segment per
+ * class for nested classes like Outer.Inner. '*' matches any characters within
+ * a segment, a segment '**' matches any number of segments. E.g. "com.foo.*"
+ * matches the classes of the package com.foo, "com.foo.**" those of its
+ * subpackages too and "com.foo.*Impl" all classes of com.foo ending with Impl.
+ *
+ * A nested class matches the patterns of its enclosing classes as well, so
+ * "com.foo.*" matches com.foo.Outer.Inner too, while "com.foo.Outer.Inner"
+ * matches only the nested class.
+ *
+ * All patterns are compiled once into a trie of segments, so matching a class
+ * walks its segments once for all patterns. An excluded annotation is given
+ * by its qualified or simple name.
+ *
+ * Immutable and thread-safe.
+ */
+public class ClassFilter {
+
+  /**
+   * The reasons a class is skipped.
+   */
+  public enum Reason {
+    /**
+     * The class matches no include pattern.
+     */
+    NOT_INCLUDED,
+    /**
+     * The class matches an exclude pattern.
+     */
+    EXCLUDED,
+    /**
+     * The class has an excluded annotation.
+     */
+    ANNOTATED
+  }
+
+  /**
+   * The filter accepting every class.
+   */
+  public static final ClassFilter ALL = new ClassFilter(Collections.<String>emptyList(),
+          Collections.<String>emptyList(), Collections.<String>emptyList());
+
+  private static final String ANY_SEGMENTS = "**";
+
+  /**
+   * The include patterns or null if all classes are included.
+   */
+  private final Node includes;
+
+  /**
+   * The exclude patterns or null if no classes are excluded.
+   */
+  private final Node excludes;
+
+  /**
+   * The qualified and simple names of the excluded annotations.
+   */
+  private final Set<String> excludedAnnotations;
+
+  /**
+   * Compiles a filter.
+   *
+   * @param includes The patterns of the classes to document, all classes are
+   * documented if empty.
+   * @param excludes The patterns of the classes not to document, even if
+   * included.
+   * @param excludedAnnotations The names of the annotations of classes not to
+   * document.
+   * @throws IllegalArgumentException If a pattern is invalid.
+   */
+  public ClassFilter(List<String> includes, List<String> excludes, List<String> excludedAnnotations) {
+    this.includes = compile(includes);
+    this.excludes = compile(excludes);
+    Set<String> annotations = new HashSet<>();
+    for (String annotation : excludedAnnotations) {
+      annotations.add(annotation.startsWith("@") ? annotation.substring(1) : annotation);
+    }
+    this.excludedAnnotations = Collections.unmodifiableSet(annotations);
+  }
+
+  /**
+   * Indicates if the filter accepts every class.
+   *
+   * @return true if there are no patterns and no excluded annotations.
+   */
+  public boolean isAll() {
+    return includes == null && excludes == null && excludedAnnotations.isEmpty();
+  }
+
+  /**
+   * Indicates if the filter checks annotations, i.e. if the annotations of a
+   * class have to be passed to {@link #check(String, String, Collection)}.
+   *
+   * @return true if there are excluded annotations.
+   */
+  public boolean hasExcludedAnnotations() {
+    return !excludedAnnotations.isEmpty();
+  }
+
+  /**
+   * Checks a class.
+   *
+   * @param packageName The name of the package of the class, empty for the
+   * unnamed package.
+   * @param className The name of the class within its package.
+   * @param annotations The qualified names of the annotations of the class.
+   * @return null if the class is documented, otherwise the reason it is
+   * skipped.
+   */
+  public Reason check(String packageName, String className, Collection<String> annotations) {
+    if (includes != null || excludes != null) {
+      String[] segments = segments(packageName, className);
+      // the segments up to the outermost class have to be matched
+      int minLength = segments.length - className.split("\\.", -1).length + 1;
+      if (includes != null && !includes.matches(segments, 0, minLength)) {
+        return Reason.NOT_INCLUDED;
+      }
+      if (excludes != null && excludes.matches(segments, 0, minLength)) {
+        return Reason.EXCLUDED;
+      }
+    }
+    if (!excludedAnnotations.isEmpty()) {
+      for (String annotation : annotations) {
+        if (excludedAnnotations.contains(annotation)
+                || excludedAnnotations.contains(annotation.substring(annotation.lastIndexOf('.') + 1))) {
+          return Reason.ANNOTATED;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static String[] segments(String packageName, String className) {
+    return (packageName.isEmpty() ? className : packageName + "." + className).split("\\.", -1);
+  }
+
+  /**
+   * Compiles patterns into a trie.
+   *
+   * @return The root node or null if there are no patterns.
+   */
+  private static Node compile(List<String> patterns) {
+    if (patterns.isEmpty()) {
+      return null;
+    }
+    Node root = new Node();
+    for (String pattern : patterns) {
+      Node node = root;
+      for (String segment : pattern.split("\\.", -1)) {
+        if (segment.isEmpty()) {
+          throw new IllegalArgumentException("Invalid class pattern '" + pattern + "', it has an empty segment.");
+        }
+        node = node.child(segment);
+      }
+      node.terminal = true;
+    }
+    return root;
+  }
+
+  /**
+   * A node of the pattern trie, reached by the segments of a pattern prefix.
+   */
+  private static class Node {
+
+    /**
+     * The children by segments without wildcards.
+     */
+    private final Map<String, Node> literals = new HashMap<>();
+
+    /**
+     * The children by segments with '*' wildcards.
+     */
+    private final List<Pattern> wildcardSegments = new ArrayList<>();
+    private final List<Node> wildcards = new ArrayList<>();
+
+    /**
+     * The child by a '**' segment or null.
+     */
+    private Node anySegments;
+
+    /**
+     * True if a pattern ends here.
+     */
+    private boolean terminal;
+
+    private Node child(String segment) {
+      if (segment.equals(ANY_SEGMENTS)) {
+        if (anySegments == null) {
+          anySegments = new Node();
+        }
+        return anySegments;
+      }
+      if (segment.indexOf('*') < 0) {
+        return literals.computeIfAbsent(segment, s -> new Node());
+      }
+      String regex = Pattern.quote(segment).replace("*", "\\E[^.]*\\Q");
+      for (int i = 0; i < wildcardSegments.size(); i++) {
+        if (wildcardSegments.get(i).pattern().equals(regex)) {
+          return wildcards.get(i);
+        }
+      }
+      Node node = new Node();
+      wildcardSegments.add(Pattern.compile(regex));
+      wildcards.add(node);
+      return node;
+    }
+
+    /**
+     * Checks if a pattern through this node matches the remaining segments,
+     * or the remaining segments of an enclosing class.
+     *
+     * @param segments The segments of the class.
+     * @param index The index of the first remaining segment.
+     * @param minLength The number of segments up to the outermost class, a
+     * pattern ending after these matches the nested classes as well.
+     */
+    private boolean matches(String[] segments, int index, int minLength) {
+      if (terminal && minLength <= index) {
+        return true;
+      }
+      if (anySegments != null) {
+        // '**' consumes none up to all remaining segments
+        for (int i = index; i <= segments.length; i++) {
+          if (anySegments.matches(segments, i, minLength)) {
+            return true;
+          }
+        }
+      }
+      if (index == segments.length) {
+        return false;
+      }
+      String segment = segments[index];
+      Node literal = literals.get(segment);
+      if (literal != null && literal.matches(segments, index + 1, minLength)) {
+        return true;
+      }
+      for (int i = 0; i < wildcards.size(); i++) {
+        if (wildcardSegments.get(i).matcher(segment).matches()
+                && wildcards.get(i).matches(segments, index + 1, minLength)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
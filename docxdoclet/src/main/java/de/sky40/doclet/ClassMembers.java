@@ -0,0 +1,78 @@
+package de.sky40.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.ProgramElementDoc;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The members of a class to document. The javadoc model builds and filters a
+ * new array on every call of e.g. {@link ClassDoc#methods()}, so the members
+ * are taken from the class once and filtered by access level here.
+ *
+ * Immutable.
+ */
+public class ClassMembers {
+
+  private final ClassDoc[] interfaces;
+  private final List<FieldDoc> enumConstants;
+  private final List<FieldDoc> fields;
+  private final List<ConstructorDoc> constructors;
+  private final List<MethodDoc> methods;
+
+  /**
+   * Creates the snapshot of the members of a class.
+   *
+   * @param classDoc The class.
+   * @param includeNonPublic True to include members which are not public.
+   */
+  public ClassMembers(ClassDoc classDoc, boolean includeNonPublic) {
+    this.interfaces = classDoc.interfaces();
+    this.enumConstants = filter(classDoc.enumConstants(), includeNonPublic);
+    this.fields = filter(classDoc.fields(), includeNonPublic);
+    this.constructors = filter(classDoc.constructors(), includeNonPublic);
+    this.methods = filter(classDoc.methods(), includeNonPublic);
+  }
+
+  /**
+   * The interfaces the class implements directly.
+   *
+   * @return The interfaces, must not be modified.
+   */
+  public ClassDoc[] getInterfaces() {
+    return interfaces;
+  }
+
+  public List<FieldDoc> getEnumConstants() {
+    return enumConstants;
+  }
+
+  public List<FieldDoc> getFields() {
+    return fields;
+  }
+
+  public List<ConstructorDoc> getConstructors() {
+    return constructors;
+  }
+
+  public List<MethodDoc> getMethods() {
+    return methods;
+  }
+
+  private static <T extends ProgramElementDoc> List<T> filter(T[] members, boolean includeNonPublic) {
+    if (members == null || members.length == 0) {
+      return Collections.emptyList();
+    }
+    List<T> result = new ArrayList<>(members.length);
+    for (T member : members) {
+      if (includeNonPublic || member.isPublic()) {
+        result.add(member);
+      }
+    }
+    return Collections.unmodifiableList(result);
+  }
+}
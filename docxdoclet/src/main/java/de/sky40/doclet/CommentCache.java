@@ -0,0 +1,121 @@
+package de.sky40.doclet;
+
+import de.sky40.docxreader.domain.BuiltInStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the spans of the most recently written comments, so comments written
+ * repeatedly (inherited comments, boilerplate of generated code) are split by
+ * the {@link CommentTokenizer} only once. The least recently used comment is
+ * evicted when the cache is full.
+ *
+ * Thread-safe, shared by all builders of a document.
+ */
+public class CommentCache {
+
+  /**
+   * A styled span of a comment.
+   *
+   * Immutable.
+   */
+  public static class Span {
+
+    private final BuiltInStyle style;
+    private final String text;
+
+    public Span(BuiltInStyle style, String text) {
+      this.style = style;
+      this.text = text;
+    }
+
+    public BuiltInStyle getStyle() {
+      return style;
+    }
+
+    public String getText() {
+      return text;
+    }
+  }
+
+  private final int maxEntries;
+
+  /**
+   * The spans by comment in access order, the least recently used first.
+   */
+  private final Map<String, List<Span>> spans = new LinkedHashMap<>(16, 0.75f, true);
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  private final AtomicInteger evicted = new AtomicInteger();
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxEntries The maximum number of comments kept, 0 to keep none.
+   */
+  public CommentCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Gets the spans of a comment, splitting it only if it is not cached.
+   *
+   * @param comment The comment text.
+   * @param tokenizer The tokenizer to split the comment on a cache miss.
+   * @return The spans in order.
+   */
+  public List<Span> getSpans(String comment, CommentTokenizer tokenizer) {
+    List<Span> result;
+    synchronized (spans) {
+      result = spans.get(comment);
+    }
+    if (result != null) {
+      hits.incrementAndGet();
+      return result;
+    }
+    misses.incrementAndGet();
+    List<Span> tokenized = new ArrayList<>();
+    tokenizer.tokenize(comment, (style, text) -> tokenized.add(new Span(style, text)));
+    result = Collections.unmodifiableList(tokenized);
+    if (0 < maxEntries) {
+      synchronized (spans) {
+        spans.put(comment, result);
+        if (maxEntries < spans.size()) {
+          Iterator<String> eldest = spans.keySet().iterator();
+          eldest.next();
+          eldest.remove();
+          evicted.incrementAndGet();
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets a report on the cache usage.
+   *
+   * @return A line with the number of cache hits and misses, the hit rate
+   * and the number of evicted comments.
+   */
+  public String getReport() {
+    int hitCount = hits.get();
+    int total = hitCount + misses.get();
+    long rate = total == 0 ? 0 : Math.round(100.0 * hitCount / total);
+    return "comment cache: " + hitCount + " hit(s), " + misses.get() + " miss(es), "
+            + rate + "% hit rate, " + evicted.get() + " entry(s) evicted";
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+}
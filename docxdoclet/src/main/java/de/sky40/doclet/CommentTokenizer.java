@@ -0,0 +1,212 @@
+package de.sky40.doclet;
+
+import de.sky40.docxreader.domain.BuiltInStyle;
+
+/**
+ * Splits a javadoc comment into styled text spans in a single pass.
+ *
+ * The comment is split into paragraphs at &lt;p&gt; and into lines after the
+ * end of every sentence ('.' followed by whitespace or '。'). Whitespace
+ * containing line breaks is folded into a single space, html tags are
+ * replaced by a space (including the whitespace around them) and the common
+ * entities are decoded. Inline tags like {&#64;link Foo} are written as
+ * signature spans, all other text as comment spans. Every line yields its own
+ * spans.
+ *
+ * Not thread-safe, the line buffer is reused.
+ */
+public class CommentTokenizer {
+
+  /**
+   * Receives the spans of a comment.
+   */
+  public interface SpanHandler {
+
+    /**
+     * Called for every span of a comment in order.
+     *
+     * @param style The style of the span, i.e. {@link BuiltInStyle#COMMENT}
+     * or {@link BuiltInStyle#SIGNATURE}.
+     * @param text The text of the span.
+     */
+    void span(BuiltInStyle style, String text);
+  }
+
+  private static final String[] ENTITIES = {"lt;", "gt;", "quot;", "apos;", "nbsp;", "amp;"};
+  private static final char[] ENTITY_CHARS = {'<', '>', '"', '\'', ' ', '&'};
+
+  /**
+   * The decoded text of the current line.
+   */
+  private final StringBuilder line = new StringBuilder();
+
+  /**
+   * Tokenizes a comment.
+   *
+   * @param comment The comment text.
+   * @param handler The handler receiving the spans.
+   */
+  public void tokenize(String comment, SpanHandler handler) {
+    line.setLength(0);
+    int length = comment.length();
+    // the last character which is no whitespace, before tags and entities are
+    // replaced
+    char lastChar = 0;
+    int i = 0;
+    while (i < length) {
+      char c = comment.charAt(i);
+      if (isWhitespace(c)) {
+        int end = i;
+        boolean hasLineBreak = false;
+        while (end < length && isWhitespace(comment.charAt(end))) {
+          hasLineBreak |= comment.charAt(end) == '\n' || comment.charAt(end) == '\r';
+          end++;
+        }
+        if (isParagraphStart(comment, end)) {
+          i = end;
+        } else if (lastChar == '.') {
+          // end of sentence
+          flushLine(handler);
+          i = end;
+        } else if (0 < tagLength(comment, end)) {
+          // whitespace before a tag is replaced together with the tag
+          i = end;
+        } else {
+          if (hasLineBreak) {
+            line.append(' ');
+          } else {
+            line.append(comment, i, end);
+          }
+          i = end;
+        }
+      } else if (c == '<' && isParagraphStart(comment, i)) {
+        flushLine(handler);
+        i = skipWhitespace(comment, i + 3);
+        lastChar = '>';
+      } else if (c == '<' && 0 < tagLength(comment, i)) {
+        line.append(' ');
+        i = skipWhitespace(comment, i + tagLength(comment, i));
+        lastChar = '>';
+      } else if (c == '&' && 0 <= entityIndex(comment, i + 1)) {
+        int entity = entityIndex(comment, i + 1);
+        line.append(ENTITY_CHARS[entity]);
+        i += 1 + ENTITIES[entity].length();
+        lastChar = ';';
+      } else if (c == '。') {
+        line.append(c);
+        flushLine(handler);
+        i = skipWhitespace(comment, i + 1);
+        lastChar = c;
+      } else {
+        line.append(c);
+        i++;
+        lastChar = c;
+      }
+    }
+    flushLine(handler);
+  }
+
+  /**
+   * Writes the spans of the current line and starts a new line. Inline tags
+   * are recognized within a line only.
+   */
+  private void flushLine(SpanHandler handler) {
+    int length = line.length();
+    int pos = 0;
+    int start = line.indexOf("{@");
+    while (0 <= start) {
+      int nameEnd = start + 2;
+      while (nameEnd < length && 'a' <= line.charAt(nameEnd) && line.charAt(nameEnd) <= 'z') {
+        nameEnd++;
+      }
+      if (nameEnd == start + 2) {
+        start = line.indexOf("{@", start + 1);
+        continue;
+      }
+      int valueStart = nameEnd;
+      while (valueStart < length && isWhitespace(line.charAt(valueStart))) {
+        valueStart++;
+      }
+      int end = line.indexOf("}", valueStart);
+      if (end < 0) {
+        break;
+      }
+      handler.span(BuiltInStyle.COMMENT, line.substring(pos, start));
+      if (valueStart < end) {
+        handler.span(BuiltInStyle.SIGNATURE, line.substring(valueStart, end));
+      }
+      pos = end + 1;
+      start = line.indexOf("{@", pos);
+    }
+    if (pos < length) {
+      handler.span(BuiltInStyle.COMMENT, line.substring(pos));
+    }
+    line.setLength(0);
+  }
+
+  /**
+   * Checks for a paragraph tag (&lt;p&gt; or &lt;P&gt;) at a position.
+   */
+  private static boolean isParagraphStart(String s, int i) {
+    return i + 2 < s.length() && s.charAt(i) == '<' && (s.charAt(i + 1) == 'p' || s.charAt(i + 1) == 'P') && s.charAt(i + 2) == '>';
+  }
+
+  /**
+   * Gets the length of a simple html tag (like &lt;b&gt; or &lt;/CODE&gt;) at
+   * a position. The name of the tag must be all lower case or all upper case.
+   *
+   * @return The length of the tag or 0 if there is none.
+   */
+  private static int tagLength(String s, int i) {
+    int length = s.length();
+    if (length <= i || s.charAt(i) != '<') {
+      return 0;
+    }
+    int nameStart = i + 1;
+    if (nameStart < length && s.charAt(nameStart) == '/') {
+      nameStart++;
+    }
+    int nameEnd = nameStart;
+    if (nameEnd < length && 'a' <= s.charAt(nameEnd) && s.charAt(nameEnd) <= 'z') {
+      while (nameEnd < length && 'a' <= s.charAt(nameEnd) && s.charAt(nameEnd) <= 'z') {
+        nameEnd++;
+      }
+    } else {
+      while (nameEnd < length && 'A' <= s.charAt(nameEnd) && s.charAt(nameEnd) <= 'Z') {
+        nameEnd++;
+      }
+    }
+    if (nameEnd == nameStart || length <= nameEnd || s.charAt(nameEnd) != '>') {
+      return 0;
+    }
+    return nameEnd + 1 - i;
+  }
+
+  /**
+   * Finds the entity (without '&amp;') at a position.
+   *
+   * @return The index in {@link #ENTITIES} or -1 if there is none.
+   */
+  private static int entityIndex(String s, int i) {
+    for (int e = 0; e < ENTITIES.length; e++) {
+      if (s.startsWith(ENTITIES[e], i)) {
+        return e;
+      }
+    }
+    return -1;
+  }
+
+  private static int skipWhitespace(String s, int i) {
+    while (i < s.length() && isWhitespace(s.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Checks for whitespace as matched by \s in regular expressions.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+  }
+}
@@ -1,28 +1,33 @@
 package de.sky40.doclet;
 
-import com.sun.javadoc.AnnotationDesc;
-import com.sun.javadoc.AnnotationTypeDoc;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.sun.javadoc.ClassDoc;
-import com.sun.javadoc.ExecutableMemberDoc;
-import com.sun.javadoc.MemberDoc;
-import com.sun.javadoc.MethodDoc;
-import com.sun.javadoc.PackageDoc;
-import com.sun.javadoc.ParamTag;
-import com.sun.javadoc.Parameter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 import com.sun.javadoc.RootDoc;
-import com.sun.javadoc.Tag;
-import com.sun.javadoc.ThrowsTag;
-import com.sun.javadoc.Type;
+import de.sky40.doclet.model.ApiModel;
+import de.sky40.doclet.model.ClassModel;
+import de.sky40.doclet.model.FieldModel;
+import de.sky40.doclet.model.MethodModel;
+import de.sky40.doclet.model.ModelCodec;
+import de.sky40.doclet.model.PackageModel;
+import de.sky40.doclet.model.ParameterModel;
+import de.sky40.doclet.model.ThrownExceptionModel;
+import de.sky40.docxreader.ChapterPipeline;
+import de.sky40.docxreader.ContentWriter;
 import de.sky40.docxreader.DocXWriter;
-import de.sky40.docxreader.ParamsInfo;
-import de.sky40.docxreader.domain.StyleName;
+import de.sky40.docxreader.FragmentCache;
+import de.sky40.docxreader.Log;
+import de.sky40.docxreader.TemplateCache;
+import de.sky40.docxreader.domain.BuiltInStyle;
 import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
 import org.docx4j.openpackaging.exceptions.Docx4JException;
 
@@ -36,7 +41,31 @@ public class DocumentBuilder {
    */
   private static final String LONGSPACE = "   ";
 
-  private static final String TAG_VERSION = "version";
+  /**
+   * The number of class pages per thread rendered ahead of the page being
+   * added to the document.
+   */
+  private static final int PAGES_AHEAD_PER_THREAD = 4;
+
+  /**
+   * The version of the rendering of class pages, part of the fingerprint of
+   * every cached class page. Must be increased whenever the rendering
+   * changes, so pages cached by an older doclet are rendered again.
+   */
+  private static final int RENDERER_VERSION = 1;
+
+  /**
+   * A stream discarding everything written to it.
+   */
+  private static final OutputStream NULL_OUTPUT = new OutputStream() {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  };
 
   /**
    * The options for building the document.
@@ -46,17 +75,46 @@ public class DocumentBuilder {
   /**
    * A Writer to write styled paragraphs and runs into a docx document.
    */
-  private final DocXWriter writer;
+  private final ContentWriter writer;
+
+  /**
+   * The writer of the docx document, null if this builder writes a single
+   * class page into a fragment only.
+   */
+  private final DocXWriter docxWriter;
 
   /**
-   * The Javadoc root node
+   * Splits comments into styled runs.
    */
-  private RootDoc root;
+  private final CommentTokenizer commentTokenizer = new CommentTokenizer();
 
   /**
-   * Array of the packages
+   * The spans of recently written comments, shared with the builders of
+   * fragments.
    */
-  private final List<PackageDoc> packages = new ArrayList<>();
+  private final CommentCache commentCache;
+
+  /**
+   * True to document members of all access levels, false for public members
+   * only.
+   */
+  private final boolean includeNonPublic;
+
+  /**
+   * The cache of class pages, null if no cache is used.
+   */
+  private FragmentCache fragmentCache;
+
+  /**
+   * Everything but the class a class page depends on, hashed into the
+   * fingerprint of every class page.
+   */
+  private byte[] fragmentContext;
+
+  /**
+   * The profile recording the phases and class pages.
+   */
+  private RunProfile profile = new RunProfile();
 
   /**
    * Creates a document builder.
@@ -67,6 +125,61 @@ public class DocumentBuilder {
   public DocumentBuilder(BuilderOptions builderOptions, DocXWriter writer) {
     this.builderOptions = builderOptions;
     this.writer = writer;
+    this.docxWriter = writer;
+    this.includeNonPublic = builderOptions.isAccessLevelPrivate();
+    this.commentCache = new CommentCache(builderOptions.getCommentCacheSize());
+  }
+
+  /**
+   * Creates a document builder writing class pages into a fragment.
+   *
+   * @param builderOptions The options to use in the build process.
+   * @param fragment The fragment to write to.
+   * @param commentCache The comment cache of the document builder.
+   */
+  private DocumentBuilder(BuilderOptions builderOptions, ContentWriter fragment, CommentCache commentCache) {
+    this.builderOptions = builderOptions;
+    this.writer = fragment;
+    this.docxWriter = null;
+    this.includeNonPublic = builderOptions.isAccessLevelPrivate();
+    this.commentCache = commentCache;
+  }
+
+  /**
+   * Gets the cache of the comments written by this builder.
+   *
+   * @return The cache.
+   */
+  public CommentCache getCommentCache() {
+    return commentCache;
+  }
+
+  /**
+   * Takes class pages from a cache as long as the class, the template, the
+   * options and the doclet do not change, and stores rendered class pages in
+   * the cache. Requires streaming mode.
+   *
+   * @param cache The cache.
+   * @param templateKey The hash of the template, see
+   * {@link TemplateCache#keyOf(byte[])}.
+   */
+  public void setFragmentCache(FragmentCache cache, String templateKey) {
+    this.fragmentCache = cache;
+    this.fragmentContext = ("renderer=" + RENDERER_VERSION
+            + ";doclet=" + DocumentBuilder.class.getPackage().getImplementationVersion()
+            + ";template=" + templateKey
+            + ";private=" + builderOptions.isAccessLevelPrivate()
+            + ";missing=" + builderOptions.isShowMissingDocs()).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Records the rendering and writing phases and the rendering of every class
+   * page in a profile.
+   *
+   * @param profile The profile.
+   */
+  public void setProfile(RunProfile profile) {
+    this.profile = profile;
   }
 
   /**
@@ -77,148 +190,69 @@ public class DocumentBuilder {
    * @throws org.docx4j.openpackaging.exceptions.Docx4JException
    */
   public void create(RootDoc rootDoc) throws IOException, Docx4JException {
-
-    root = rootDoc;
-    // create pages for all classes
-    writeClassPages();
-    // write to file
-    writer.write();
+    create(new ModelExtractor(builderOptions, rootDoc).extract(rootDoc));
   }
 
   /**
-   * Find the comment of a method parameter by parameter name.
-   *
-   * @param doc The method/constructor to find the comment.
-   * @param name the name of the parameter
+   * Creates the doc.
    *
-   * @return an info object on the parameter with name "name"
+   * @param model The model of the API to document.
+   * @throws IOException
+   * @throws org.docx4j.openpackaging.exceptions.Docx4JException
    */
-  private ParamsInfo findCommentedParameterByName(ExecutableMemberDoc doc, String name) {
-
-    if (doc == null) {
-      return null;
+  public void create(ApiModel model) throws IOException, Docx4JException {
+    try {
+      // create pages for all classes
+      RunProfile.Stopwatch stopwatch = profile.start();
+      writeClassPages(model);
+      stopwatch.stopPhase("render class pages");
+      // write to file
+      stopwatch = profile.start();
+      docxWriter.write();
+      stopwatch.stopPhase("write document");
+    } catch (IOException | Docx4JException | RuntimeException e) {
+      // leave no partially streamed package behind
+      docxWriter.discard();
+      throw e;
     }
-
-    // find parameters
-    Parameter[] parameters = doc.parameters();
-    if (0 < parameters.length) {
-      // iterate all parameters of method/constructor
-      for (Parameter parameter : parameters) {
-        if (name.equals(parameter.name())) {
-          // build comment
-          String comment = getParamComment(doc.paramTags(), parameter.name());
-          if (!comment.isEmpty()) {
-            return new ParamsInfo(parameter, doc);
-          }
-        }
-      }
-    }
-
-    // find in super type if possible
-    if (!doc.isConstructor()) {
-      // go to super method
-      MethodDoc method = (MethodDoc) doc;
-      return findCommentedParameterByName(method.overriddenMethod(), name);
-    } else {
-      // do not traverse constructor methods, because they are not inherited with @Override
-    }
-
-    // check the docs of the interfaces of the type
-    ClassDoc classDoc = doc.containingClass();
-    ClassDoc[] interfaces = classDoc.interfaces();
-    // iterate all interfaces
-    if (interfaces != null) {
-      for (ClassDoc interfaceDoc : interfaces) {
-        MethodDoc[] methods = interfaceDoc.methods();
-        if (methods != null) // iterate methods of interfaces
-        {
-          for (MethodDoc ifcMethod : methods) {
-            if (ifcMethod.name().equals(doc.name())) {
-              if (ifcMethod.signature().equals(doc.signature())) {
-                // method with same signature in interface was found
-                return findCommentedParameterByName(ifcMethod, name);
-              }
-            }
-          }
-        }
-      }
-    }
-
-    return null;
   }
 
   /**
-   * Build a method signature from parameters. Replaces commons like java.lang,
-   * java.io, etc.
+   * Build a method signature from parameters.
    *
    * @param parameters The method parameters
    * @return a signature string
    */
-  private String getParamSignature(Parameter[] parameters) {
+  private String getParamSignature(List<ParameterModel> parameters) {
     StringBuilder sb = new StringBuilder();
-    for (Parameter parameter : parameters) {
+    for (ParameterModel parameter : parameters) {
       if (0 < sb.length()) {
         sb.append(", ");
       }
-      String type = parameter.type().toString();
-      type = type.replaceAll("java\\.(lang|util|io|nio)\\.", "");
-      sb.append(type);
+      sb.append(parameter.getType());
       sb.append(" ");
-      sb.append(parameter.name());
+      sb.append(parameter.getName());
     }
     return sb.toString();
   }
 
-  /**
-   * Get the comment of a parameter by param name.
-   *
-   * @param tags the tags to search in
-   * @param name the name to find
-   * @return the comment of the parameter with name "name", or empty String if
-   * none was found.
-   */
-  private String getParamComment(ParamTag[] tags, String name) {
-    for (ParamTag tag : tags) {
-      if (tag.parameterName().equals(name)) {
-        return tag.parameterComment();
-      }
-    }
-    return "";
-  }
-
-  /**
-   * Get the comment of a thrown exception by name.
-   *
-   * @param tags the tags to search in
-   * @param name the name to find
-   * @return the comment of the exception with name "name", or empty String if
-   * none was found.
-   */
-  private String getThrowsComment(ThrowsTag[] tags, String name) {
-    for (ThrowsTag tag : tags) {
-      if (tag.exceptionName().equals(name)) {
-        return tag.exceptionComment();
-      }
-    }
-    return "";
-  }
-
   /**
    * Write a doc on the implemented interfaces of a class.
    *
-   * @param classDoc The class documentation node.
+   * @param classModel The class.
    */
-  private void writeClassImplementedInterfaces(ClassDoc classDoc) {
+  private void writeClassImplementedInterfaces(ClassModel classModel) {
     // write implemented interfaces
-    if (0 < classDoc.interfaces().length) {
+    List<String> interfaces = classModel.getInterfaces();
+    if (0 < interfaces.size()) {
       writer.addLineBreak();
-      writer.addStyledRun(writer.findStyle(StyleName.HEADING), BuilderOptions.HEADING_IMPLEMENTS);
+      writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.HEADING), BuilderOptions.HEADING_IMPLEMENTS);
 
-      for (int i = 0; i < classDoc.interfaces().length; i++) {
+      for (int i = 0; i < interfaces.size(); i++) {
         if (0 < i) {
           writer.addRun(",");
         }
-        writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), " " + classDoc.interfaces()[i].qualifiedName());
+        writer.addStyledRun(writer.findStyle(BuiltInStyle.SIGNATURE), " " + interfaces.get(i));
       }
     }
   }
@@ -226,20 +260,13 @@ public class DocumentBuilder {
   /**
    * Write the classes inheritance tree into the document.
    *
-   * @param classDoc The class documentation node to use.
+   * @param classModel The class.
    */
-  private void writeClassInheritanceTree(ClassDoc classDoc) {
+  private void writeClassInheritanceTree(ClassModel classModel) {
     String str;
     // write class inheritance docs
-    List<ClassDoc> classDocs = new ArrayList<>();
-    classDocs.add(classDoc);
-    ClassDoc d = classDoc.superclass();
-    while (d != null) {
-      classDocs.add(d);
-      d = d.superclass();
-    }
-    Collections.reverse(classDocs);
-    for (int i = 0; i < classDocs.size(); i++) {
+    List<String> hierarchy = classModel.getHierarchy();
+    for (int i = 0; i < hierarchy.size(); i++) {
       str = "";
       for (int j = 1; j < i; j++) {
         str += "　　 ";
@@ -247,8 +274,8 @@ public class DocumentBuilder {
       if (0 < i) {
         str += "　└ ";
       }
-      str += classDocs.get(i).qualifiedName();
-      writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), str);
+      str += hierarchy.get(i);
+      writer.addStyledRun(writer.findStyle(BuiltInStyle.SIGNATURE), str);
       writer.addLineBreak();
     }
   }
@@ -256,137 +283,341 @@ public class DocumentBuilder {
   /**
    * Writes the name of the class as a new chapter.
    *
-   * @param classDoc the class documentation node.
+   * @param classModel The class.
    */
-  private void writeClassNameParagraph(ClassDoc classDoc) {
-    if (classDoc.isEnum()) {
-      writer.addStyledParagraph(writer.findStyle(StyleName.CLASS), BuilderOptions.TEXT_ENUM + classDoc.name());
-    } else if (classDoc.isInterface()) {
-      writer.addStyledParagraph(writer.findStyle(StyleName.CLASS), BuilderOptions.TEXT_INTERFACE + classDoc.name());
-    } else {
-      writer.addStyledParagraph(writer.findStyle(StyleName.CLASS), BuilderOptions.TEXT_CLASS + classDoc.name());
+  private void writeClassNameParagraph(ClassModel classModel) {
+    switch (classModel.getKind()) {
+      case ENUM:
+        writer.addStyledParagraph(writer.findStyle(BuiltInStyle.CLASS), BuilderOptions.TEXT_ENUM + classModel.getName());
+        break;
+      case INTERFACE:
+        writer.addStyledParagraph(writer.findStyle(BuiltInStyle.CLASS), BuilderOptions.TEXT_INTERFACE + classModel.getName());
+        break;
+      default:
+        writer.addStyledParagraph(writer.findStyle(BuiltInStyle.CLASS), BuilderOptions.TEXT_CLASS + classModel.getName());
     }
   }
 
   /**
    * Makes a new chapter for every package and a subchapter for every class and
    * writes to the document.
+   *
+   * @param model The model of the API.
+   * @throws IOException If writing a chapter in the background failed.
    */
-  private void writeClassPages() {
+  private void writeClassPages(ApiModel model) throws IOException {
+    int threads = builderOptions.getThreads();
+    if (builderOptions.isPipelined()) {
+      writeClassPagesPipelined(model, threads);
+      return;
+    }
+    if (1 < threads) {
+      writeClassPagesInParallel(model, threads);
+      return;
+    }
 
-    String str;
+    for (PackageModel packageModel : model.getPackages()) {
+      writePackageChapter(packageModel);
+      for (ClassModel classModel : packageModel.getClasses()) {
+        if (fragmentCache != null) {
+          docxWriter.addFragment(renderClassPage(classModel, true));
+        } else {
+          RunProfile.Stopwatch stopwatch = profile.start();
+          long textLength = docxWriter.getTextLength();
+          writeClassPage(classModel);
+          stopwatch.stopClass(qualifiedNameOf(classModel), docxWriter.getTextLength() - textLength);
+        }
+      }
+    }
+  }
+
+  /**
+   * Renders the page of a class into a document fragment or takes it from
+   * the fragment cache.
+   *
+   * @param classModel The class to document.
+   * @param finish true to finish (serialize) the fragment on this thread,
+   * false to leave it to the thread adding it to the document. Fragments
+   * stored in the cache are always finished.
+   * @return The fragment.
+   */
+  private DocXWriter renderClassPage(ClassModel classModel, boolean finish) {
+    RunProfile.Stopwatch stopwatch = profile.start();
+    DocXWriter fragment = renderOrLoadClassPage(classModel, finish);
+    stopwatch.stopClass(qualifiedNameOf(classModel), fragment.getTextLength());
+    return fragment;
+  }
 
-    // iterate all classes
-    for (ClassDoc classDoc : root.classes()) {
+  private DocXWriter renderOrLoadClassPage(ClassModel classModel, boolean finish) {
+    String key = null;
+    if (fragmentCache != null) {
+      key = fingerprintOf(classModel);
+      byte[] cacheEntry = fragmentCache.load(key);
+      if (cacheEntry != null) {
+        try {
+          return docxWriter.createFragment(cacheEntry);
+        } catch (IOException e) {
+          Log.warn("Ignoring invalid fragment cache entry " + key + ": " + e.getMessage());
+        }
+      }
+    }
+
+    long start = System.nanoTime();
+    DocXWriter fragment = docxWriter.createFragment();
+    new DocumentBuilder(builderOptions, fragment, commentCache).writeClassPage(classModel);
+    if (finish || key != null) {
+      fragment.finishFragment();
+    }
+    if (key != null) {
+      byte[] cacheEntry = fragment.toCacheEntry();
+      if (cacheEntry != null) {
+        fragmentCache.store(key, cacheEntry, System.nanoTime() - start);
+      }
+    }
+    return fragment;
+  }
 
-      PackageDoc packageDoc = classDoc.containingPackage();
+  private static String qualifiedNameOf(ClassModel classModel) {
+    List<String> hierarchy = classModel.getHierarchy();
+    return hierarchy.get(hierarchy.size() - 1);
+  }
 
-      // Create new chapter with package description if it does not exist yet.
-      if (!packages.contains(packageDoc)) {
+  /**
+   * Calculates the fingerprint of the page of a class: the hash of the class
+   * model (names, signatures, comments, tags, inheritance chain), the template
+   * and the options.
+   *
+   * @param classModel The class.
+   * @return The SHA-256 hash as hex string.
+   */
+  private String fingerprintOf(ClassModel classModel) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(fragmentContext);
+      ModelCodec.write(classModel, new DigestOutputStream(NULL_OUTPUT, digest));
+      return new HexBinaryAdapter().marshal(digest.digest()).toLowerCase();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not supported", e);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
 
-        writer.addPageBreak();
-        str = BuilderOptions.TEXT_PACKAGE + packageDoc.name();
-        writer.addStyledParagraph(writer.findStyle(StyleName.PACKAGE), str);
+  /**
+   * Writes the class pages on a fork-join pool. Every class page is written
+   * into a document fragment by its own builder or taken from the fragment
+   * cache. The fragments are added in the order of the classes, so the
+   * document is the same as the one written sequentially. Only a window of
+   * class pages ahead of the page being added is rendered, so the fragments
+   * held in memory do not grow with the size of the API.
+   *
+   * @param model The model of the API.
+   * @param threads The number of threads to use.
+   */
+  private void writeClassPagesInParallel(ApiModel model, int threads) {
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      List<ClassModel> classes = new ArrayList<>();
+      for (PackageModel packageModel : model.getPackages()) {
+        classes.addAll(packageModel.getClasses());
+      }
+      int window = threads * PAGES_AHEAD_PER_THREAD;
+      List<ForkJoinTask<DocXWriter>> fragments = new ArrayList<>(classes.size());
+      int i = 0;
+      for (PackageModel packageModel : model.getPackages()) {
+        writePackageChapter(packageModel);
+        for (int end = i + packageModel.getClasses().size(); i < end; i++) {
+          while (fragments.size() < classes.size() && fragments.size() < i + window) {
+            ClassModel classModel = classes.get(fragments.size());
+            fragments.add(pool.submit(() -> renderClassPage(classModel, true)));
+          }
+          // merge in the order of the classes
+          docxWriter.addFragment(fragments.get(i).join());
+          fragments.set(i, null);
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
 
-        writeComment(packageDoc.commentText());
+  /**
+   * Writes the class pages through a {@link ChapterPipeline}: every package
+   * chapter is rendered into fragments, which are serialized and written by
+   * the background thread of the pipeline while the next chapter is
+   * rendered. With more than one thread the class pages are rendered on a
+   * fork-join pool, one package ahead of the chapter being assembled, so
+   * the rendered pages held in memory stay bounded by the pipeline depth.
+   *
+   * @param model The model of the API.
+   * @param threads The number of threads to render the class pages with.
+   * @throws IOException If writing a chapter failed.
+   */
+  private void writeClassPagesPipelined(ApiModel model, int threads) throws IOException {
+    ChapterPipeline pipeline = new ChapterPipeline(docxWriter, builderOptions.getPipelineDepth());
+    ForkJoinPool pool = 1 < threads ? new ForkJoinPool(threads) : null;
+    try {
+      List<PackageModel> packages = model.getPackages();
+      List<ForkJoinTask<DocXWriter>> nextPages = pool != null && !packages.isEmpty()
+              ? submitClassPages(pool, packages.get(0)) : null;
+      for (int i = 0; i < packages.size(); i++) {
+        List<ForkJoinTask<DocXWriter>> pages = nextPages;
+        if (pool != null && i + 1 < packages.size()) {
+          nextPages = submitClassPages(pool, packages.get(i + 1));
+        }
 
-        packages.add(packageDoc);
+        List<DocXWriter> chapter = new ArrayList<>();
+        chapter.add(renderPackageChapter(packages.get(i)));
+        if (pages != null) {
+          for (ForkJoinTask<DocXWriter> page : pages) {
+            chapter.add(page.join());
+          }
+        } else {
+          for (ClassModel classModel : packages.get(i).getClasses()) {
+            chapter.add(renderClassPage(classModel, false));
+          }
+        }
+        pipeline.submit(chapter);
+      }
+      pipeline.finish();
+    } finally {
+      // drops the chapters not written yet if rendering failed
+      pipeline.cancel();
+      if (pool != null) {
+        pool.shutdownNow();
       }
+      profile.addPhase("write chapters (background)", pipeline.getBusyNanos());
+    }
+  }
 
-      // begin a new page for every class
-      writer.addPageBreak();
-      writer.closeParagraph();
+  private List<ForkJoinTask<DocXWriter>> submitClassPages(ForkJoinPool pool, PackageModel packageModel) {
+    List<ForkJoinTask<DocXWriter>> pages = new ArrayList<>();
+    for (ClassModel classModel : packageModel.getClasses()) {
+      pages.add(pool.submit(() -> renderClassPage(classModel, true)));
+    }
+    return pages;
+  }
 
-      // write class/interface name as a new chapter
-      writeClassNameParagraph(classDoc);
+  /**
+   * Renders the chapter heading and description of a package into a
+   * document fragment.
+   *
+   * @param packageModel The package.
+   * @return The unfinished fragment.
+   */
+  private DocXWriter renderPackageChapter(PackageModel packageModel) {
+    DocXWriter fragment = docxWriter.createFragment();
+    new DocumentBuilder(builderOptions, fragment, commentCache).writePackageChapter(packageModel);
+    return fragment;
+  }
 
-      // write the class inheritance tree
-      writeClassInheritanceTree(classDoc);
+  /**
+   * Creates a new chapter with package description.
+   *
+   * @param packageModel The package of the next classes.
+   */
+  private void writePackageChapter(PackageModel packageModel) {
+    writer.addPageBreak();
+    String str = BuilderOptions.TEXT_PACKAGE + packageModel.getName();
+    writer.addStyledParagraph(writer.findStyle(BuiltInStyle.PACKAGE), str);
 
-      // write implemented interfaces
-      writeClassImplementedInterfaces(classDoc);
+    writeComment(packageModel.getComment());
+  }
 
-      writer.closeParagraph();
+  /**
+   * Writes the page of a class as a subchapter.
+   *
+   * @param classModel The class to document.
+   */
+  private void writeClassPage(ClassModel classModel) {
+
+    // begin a new page for every class
+    writer.addPageBreak();
+    writer.closeParagraph();
+
+    // write class/interface name as a new chapter
+    writeClassNameParagraph(classModel);
+
+    // write the class inheritance tree
+    writeClassInheritanceTree(classModel);
+
+    // write implemented interfaces
+    writeClassImplementedInterfaces(classModel);
+
+    writer.closeParagraph();
 
-      // write modifiers and name
-      writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), classDoc.modifiers() + " " + classDoc.name());
+    // write modifiers and name
+    writer.addStyledRun(writer.findStyle(BuiltInStyle.SIGNATURE), classModel.getModifiers() + " " + classModel.getName());
+    writer.addLineBreak();
+    // write comment on class
+    if (!classModel.getComment().isEmpty()) {
+      writeComment(classModel.getComment());
       writer.addLineBreak();
-      // write comment on class
-      if (!classDoc.commentText().isEmpty()) {
-        writeComment(classDoc.commentText());
+    } else {
+      if (builderOptions.isShowMissingDocs()) {
+        writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_CLASS);
         writer.addLineBreak();
-      } else {
-        if (builderOptions.isShowMissingDocs()) {
-          writer.addStyledRun(writer.findStyle(StyleName.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_CLASS);
-          writer.addLineBreak();
-        }
       }
+    }
 
-      writer.addLineBreak();
+    writer.addLineBreak();
 
-      writeClassVersionsAndAuthors(classDoc);
-      writeClassMembers(classDoc);
+    writeClassVersionsAndAuthors(classModel);
+    writeClassMembers(classModel);
 
-      writer.closeParagraph();
-    }
+    writer.closeParagraph();
   }
 
   /**
-   * Write all methods, fields, constructors etc of class or interface.
+   * Write all methods, fields, constructors etc of class or interface which
+   * are visible at the access level.
    *
-   * @param classDoc The class to document.
-   */
-  private void writeClassMembers(ClassDoc classDoc) {
-    // public enum constants
-    if (0 < classDoc.enumConstants().length) {
-      for (int i = 0; i < classDoc.enumConstants().length; i++) {
-        if (classDoc.enumConstants()[i].isPublic() || builderOptions.isAccessLevelPrivate()) {
-          writeFieldDoc(classDoc.enumConstants()[i]);
-        }
+   * @param classModel The class to document.
+   */
+  private void writeClassMembers(ClassModel classModel) {
+    // enum constants
+    for (FieldModel enumConstant : classModel.getEnumConstants()) {
+      if (enumConstant.isPublic() || includeNonPublic) {
+        writeFieldDoc(enumConstant);
       }
     }
 
     // fields
-    if (0 < classDoc.fields().length) {
-      for (int i = 0; i < classDoc.fields().length; i++) {
-        // public fields
-        if (classDoc.fields()[i].isPublic() || builderOptions.isAccessLevelPrivate()) {
-          writeFieldDoc(classDoc.fields()[i]);
-        }
+    for (FieldModel field : classModel.getFields()) {
+      if (field.isPublic() || includeNonPublic) {
+        writeFieldDoc(field);
       }
     }
 
     // constructors
-    if (!classDoc.isAbstract()) {
-      if (0 < classDoc.constructors().length) {
-        for (int i = 0; i < classDoc.constructors().length; i++) {
-          if (classDoc.constructors()[i].isPublic() || builderOptions.isAccessLevelPrivate()) {
-            if (0 < i) {
-              writer.addLineBreak();
-            }
-            writeMemberDoc(classDoc.constructors()[i]);
+    if (!classModel.isAbstract()) {
+      boolean isFirst = true;
+      for (MethodModel constructor : classModel.getConstructors()) {
+        if (constructor.isPublic() || includeNonPublic) {
+          if (!isFirst) {
+            writer.addLineBreak();
           }
+          writeMemberDoc(constructor);
+          isFirst = false;
         }
       }
     }
 
     // write methods
-    if (0 < classDoc.methods().length) {
-      for (int i = 0; i < classDoc.methods().length; i++) {
-        if (classDoc.methods()[i].isPublic() || builderOptions.isAccessLevelPrivate()) {
-          writeMemberDoc(classDoc.methods()[i]);
-        }
+    for (MethodModel method : classModel.getMethods()) {
+      if (method.isPublic() || includeNonPublic) {
+        writeMemberDoc(method);
       }
     }
   }
 
-  private void writeClassVersionsAndAuthors(ClassDoc classDoc) {
+  private void writeClassVersionsAndAuthors(ClassModel classModel) {
     // write version info
-    Tag[] versionTags = classDoc.tags(TAG_VERSION);
-    if (0 < versionTags.length) {
-      writer.addStyledRun(writer.findStyle(StyleName.HEADING), BuilderOptions.HEADING_VERSION);
-      for (int i = 0; i < versionTags.length; i++) {
-        String text = " " + versionTags[i].text();
+    List<String> versions = classModel.getVersions();
+    if (0 < versions.size()) {
+      writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.HEADING), BuilderOptions.HEADING_VERSION);
+      for (int i = 0; i < versions.size(); i++) {
+        String text = " " + versions.get(i);
         if (0 < i) {
           text = "," + text;
         }
@@ -396,11 +627,11 @@ public class DocumentBuilder {
     }
 
     // write authors info
-    Tag[] authorTags = classDoc.tags("author");
-    if (0 < authorTags.length) {
-      writer.addStyledRun(writer.findStyle(StyleName.HEADING), BuilderOptions.HEADING_AUTHOR);
-      for (int i = 0; i < authorTags.length; i++) {
-        String text = " " + authorTags[i].text();
+    List<String> authors = classModel.getAuthors();
+    if (0 < authors.size()) {
+      writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.HEADING), BuilderOptions.HEADING_AUTHOR);
+      for (int i = 0; i < authors.size(); i++) {
+        String text = " " + authors.get(i);
         if (0 < i) {
           text = "," + text;
         }
@@ -410,81 +641,75 @@ public class DocumentBuilder {
     }
   }
 
-  private void writeFieldDoc(MemberDoc doc) {
+  private void writeFieldDoc(FieldModel field) {
 
     String fieldType;
-    if (doc.isEnumConstant()) {
-      fieldType = "Enum constant";
-    } else if (doc.isEnum()) {
-      fieldType = "Enumeration type";
-    } else {
-      fieldType = "Field";
+    switch (field.getKind()) {
+      case ENUM_CONSTANT:
+        fieldType = "Enum constant";
+        break;
+      case ENUM:
+        fieldType = "Enumeration type";
+        break;
+      default:
+        fieldType = "Field";
     }
 
-    writer.addStyledParagraph(writer.findStyle(StyleName.METHOD), doc.name() + " " + fieldType);
+    writer.addStyledParagraph(writer.findStyle(BuiltInStyle.METHOD), field.getName() + " " + fieldType);
 
-    writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), doc.modifiers() + " " + doc.name());
+    writer.addStyledRun(writer.findStyle(BuiltInStyle.SIGNATURE), field.getModifiers() + " " + field.getName());
     writer.addLineBreak();
 
-    if (!doc.commentText().isEmpty()) {
-      writeComment(doc.commentText());
+    if (!field.getComment().isEmpty()) {
+      writeComment(field.getComment());
       writer.addLineBreak();
     } else {
       if (builderOptions.isShowMissingDocs()) {
-        writer.addStyledRun(writer.findStyle(StyleName.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_FIELD);
+        writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_FIELD);
         writer.addLineBreak();
       }
     }
   }
 
-  private void writeMemberDoc(ExecutableMemberDoc doc) {
+  private void writeMemberDoc(MethodModel method) {
 
     String str;
-    boolean isOverriddenMethod = false;
 
     String memberType;
-    if (doc.isConstructor()) {
-      memberType = "Constructor";
-    } else if (doc.isMethod()) {
-      memberType = "Method";
-    } else {
-      memberType = "Member";
+    switch (method.getKind()) {
+      case CONSTRUCTOR:
+        memberType = "Constructor";
+        break;
+      case METHOD:
+        memberType = "Method";
+        break;
+      default:
+        memberType = "Member";
     }
 
-    writer.addStyledParagraph(writer.findStyle(StyleName.METHOD), doc.name() + " " + memberType);
+    writer.addStyledParagraph(writer.findStyle(BuiltInStyle.METHOD), method.getName() + " " + memberType);
 
     // Method annotations
-    if (0 < doc.annotations().length) {
-      AnnotationDesc[] annotations = doc.annotations();
-      for (int i = 0; i < annotations.length; i++) {
-        AnnotationDesc annotation = annotations[i];
-        AnnotationTypeDoc annoType = annotation.annotationType();
-        String name = annoType.simpleTypeName();
-        if ("Override".equals(name)) {
-          str = "@Override";
-          isOverriddenMethod = true;
-          writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), str);
-          writer.addLineBreak();
-        }
-      }
+    if (method.isOverride()) {
+      writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.SIGNATURE), "@Override");
+      writer.addLineBreak();
     }
 
     // Method signature 
-    str = doc.modifiers();
-    if (doc instanceof MethodDoc) {
-      MethodDoc method = (MethodDoc) doc;
-      str += " " + method.returnType().simpleTypeName();
-    }
-    str += " " + doc.name();
-    str += " (" + getParamSignature(doc.parameters()) + ")";
-    writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), str);
+    str = method.getModifiers();
+    if (method.getReturnType() != null) {
+      str += " " + method.getReturnType();
+    }
+    str += " " + method.getName();
+    str += " (" + getParamSignature(method.getParameters()) + ")";
+    writer.addStyledRun(writer.findStyle(BuiltInStyle.SIGNATURE), str);
     writer.addLineBreak();
 
     // writes the comment field
-    boolean hasComment = writeMethodComment(doc, false);
+    boolean hasComment = writeMethodComment(method);
     if (!hasComment) {
       if (builderOptions.isShowMissingDocs()) {
-        writer.addStyledRun(writer.findStyle(StyleName.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_METHOD);
+        writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_METHOD);
         writer.addLineBreak();
       }
     }
@@ -492,20 +717,20 @@ public class DocumentBuilder {
     writer.addLineBreak();
 
     // Exceptions
-    Type[] exceptions = doc.thrownExceptionTypes();
-    if (0 < exceptions.length) {
-      writer.addStyledRun(writer.findStyle(StyleName.HEADING), "throws:");
+    List<ThrownExceptionModel> exceptions = method.getExceptions();
+    if (0 < exceptions.size()) {
+      writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.HEADING), "throws:");
       writer.addLineBreak();
-      for (int i = 0; i < exceptions.length; i++) {
-        str = LONGSPACE + exceptions[i].simpleTypeName();
-        writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), str);
-        String comment = " " + getThrowsComment(doc.throwsTags(), exceptions[i].typeName());
+      for (ThrownExceptionModel exception : exceptions) {
+        str = LONGSPACE + exception.getName();
+        writer.addStyledRun(writer.findStyle(BuiltInStyle.SIGNATURE), str);
+        String comment = " " + exception.getComment();
         if (!comment.isEmpty()) {
           str = " - " + comment;
           writeComment(str);
         } else {
           if (builderOptions.isShowMissingDocs()) {
-            writer.addStyledRun(writer.findStyle(StyleName.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_EXCEPTION);
+            writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_EXCEPTION);
           }
         }
         writer.addLineBreak();
@@ -513,30 +738,23 @@ public class DocumentBuilder {
       writer.addLineBreak();
     }
 
-    Parameter[] parameters = doc.parameters();
-    if (0 < parameters.length) {
-      writer.addStyledRun(writer.findStyle(StyleName.HEADING), "Parameters:");
+    List<ParameterModel> parameters = method.getParameters();
+    if (0 < parameters.size()) {
+      writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.HEADING), "Parameters:");
       writer.addLineBreak();
-      for (int i = 0; i < parameters.length; i++) {
-        boolean isFound = false;
-        ParamsInfo paramInfo = findCommentedParameterByName(doc, parameters[i].name());
-        if (paramInfo != null) {
-          str = String.format(LONGSPACE + "(%d) ", i + 1) + paramInfo.getParameter().name();
-          String comment = getParamComment(paramInfo.getDoc().paramTags(), paramInfo.getParameter().name());
-          if (!comment.isEmpty()) {
-            str += " - " + comment;
-            writeComment(str);
-            isFound = true;
-          }
-        }
-
-        if (!isFound) {
-          if (!isOverriddenMethod) {
+      for (int i = 0; i < parameters.size(); i++) {
+        ParameterModel parameter = parameters.get(i);
+        if (parameter.getComment() != null) {
+          str = String.format(LONGSPACE + "(%d) ", i + 1) + parameter.getName();
+          str += " - " + parameter.getComment();
+          writeComment(str);
+        } else {
+          if (!method.isOverride()) {
             if (builderOptions.isShowMissingDocs()) {
-              writer.addStyledRun(writer.findStyle(StyleName.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_PARAMETER);
+              writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_PARAMETER);
             }
           } else {
-            writer.addStyledRun(writer.findStyle(StyleName.COMMENT), BuilderOptions.NOTE_INHERITED_METHOD);
+            writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.COMMENT), BuilderOptions.NOTE_INHERITED_METHOD);
           }
         }
         writer.addLineBreak();
@@ -544,39 +762,24 @@ public class DocumentBuilder {
       writer.addLineBreak();
     }
 
-    if (doc instanceof MethodDoc) {
-      MethodDoc method = (MethodDoc) doc;
-      if (!method.returnType().simpleTypeName().equals("void")) {
-        writer.addStyledRun(writer.findStyle(StyleName.HEADING), "returns:");
+    if (method.getReturnType() != null && !method.getReturnType().equals("void")) {
+      writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.HEADING), "returns:");
+      writer.addLineBreak();
+      str = LONGSPACE + method.getReturnType();
+      String comment = method.getReturnComment();
+      if (!comment.isEmpty()) {
+        str += " - " + comment;
+        writeComment(str);
         writer.addLineBreak();
-        str = LONGSPACE + method.returnType().simpleTypeName();
-        boolean isFound = false;
-        do {
-          Tag[] tags = method.tags("return");
-          if (0 < tags.length) {
-            String comment = tags[0].text();
-            if (!comment.isEmpty()) {
-              str += " - " + comment;
-              writeComment(str);
-              writer.addLineBreak();
-              isFound = true;
-              break;
-            }
-          }
-          method = method.overriddenMethod();
-
-        } while (method != null);
-
-        if (!isFound) {
-          if (!isOverriddenMethod) {
-            if (builderOptions.isShowMissingDocs()) {
-              writer.addStyledRun(writer.findStyle(StyleName.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_RETURN_VALUE);
-            }
-          } else {
-            writer.addStyledRun(writer.findStyle(StyleName.COMMENT), BuilderOptions.NOTE_INHERITED_METHOD);
+      } else {
+        if (!method.isOverride()) {
+          if (builderOptions.isShowMissingDocs()) {
+            writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.MISSING), BuilderOptions.NOTE_MISSING_COMMENT_ON_RETURN_VALUE);
           }
-          writer.addLineBreak();
+        } else {
+          writer.addStyledConstantRun(writer.findStyle(BuiltInStyle.COMMENT), BuilderOptions.NOTE_INHERITED_METHOD);
         }
+        writer.addLineBreak();
       }
     }
   }
@@ -586,101 +789,29 @@ public class DocumentBuilder {
    *
    */
   private void writeComment(String str) {
-
-    String[] paragraphs = str.split("\\s*<(p|P)>\\s*");
-    for (int i = 0; i < paragraphs.length; i++) {
-      paragraphs[i] = paragraphs[i].replaceAll("\\s*[\\r\\n]+\\s*", " ");
-      paragraphs[i] = paragraphs[i].replaceAll("\\.\\s+", ".\n");
-      paragraphs[i] = paragraphs[i].replaceAll("。\\s*", "。\n");
-
-      String[] lines = paragraphs[i].split("\n");
-      for (int j = 0; j < lines.length; j++) {
-
-        String line = lines[j];
-
-        line = line.replaceAll("\\s*</?([a-z]+|[A-Z]+)>\\s*", " ");
-
-        line = line.replaceAll("&lt;", "<");
-        line = line.replaceAll("&gt;", ">");
-        line = line.replaceAll("&quot;", "\"");
-        line = line.replaceAll("&apos;", "'");
-        line = line.replaceAll("&nbsp;", " ");
-        line = line.replaceAll("&amp;", "&");
-
-        // Javadoc special comments like "{@link}"
-        Pattern p = Pattern.compile("\\{@([a-z]+)\\s*([^\\}]*)\\}");
-        Matcher m = p.matcher(line);
-        int pos = 0;
-        while (m.find()) {
-          writer.addStyledRun(writer.findStyle(StyleName.COMMENT), line.substring(pos, m.start()));
-          pos = m.end();
-          String value = m.group(2);
-
-          if (!value.isEmpty()) {
-            writer.addStyledRun(writer.findStyle(StyleName.SIGNATURE), value);
-          }
-        }
-
-        line = line.substring(pos);
-        if (!line.isEmpty()) {
-          writer.addStyledRun(writer.findStyle(StyleName.COMMENT), line);
-        }
-      }
+    for (CommentCache.Span span : commentCache.getSpans(str, commentTokenizer)) {
+      writer.addStyledRun(writer.findStyle(span.getStyle()), span.getText());
     }
   }
 
   /**
-   * Write the comment of the member (method or constructor) or delegate to
-   * supertype and write comment if empty.
+   * Write the comment of the member (method or constructor) or the comment it
+   * inherits from a supertype if its own comment is empty.
    *
-   * @param doc the member to take the comment from.
+   * @param method the member to take the comment from.
+   * @return true, if a comment was written.
    */
-  private boolean writeMethodComment(ExecutableMemberDoc doc, boolean isSuperType) {
-    if (null == doc) {
+  private boolean writeMethodComment(MethodModel method) {
+    if (method.getComment() == null) {
       return false;
     }
 
-    if (!doc.commentText().isEmpty()) {
-      writeComment(doc.commentText());
-      if (isSuperType) {
-        writeComment(" [JavaDocs note: This comment is inherited from super type " + doc.containingClass().qualifiedTypeName() + ".]");
-      }
-      writer.addLineBreak();
-      return true;
-    } else {
-      boolean isPrinted = false;
-      if (doc instanceof MethodDoc) {
-        MethodDoc superMethod = ((MethodDoc) doc).overriddenMethod();
-        isPrinted = writeMethodComment(superMethod, true);
-      }
-
-      if (!isPrinted) {
-        // check the docs of the interfaces of the type
-        ClassDoc classDoc = doc.containingClass();
-        ClassDoc[] interfaces = classDoc.interfaces();
-        // iterate interfaces
-        if (interfaces != null) {
-          for (ClassDoc interfaceDoc : interfaces) {
-            MethodDoc[] methods = interfaceDoc.methods();
-            if (methods != null) // iterate methods of interfaces
-            {
-              for (MethodDoc ifcMethod : methods) {
-                if (ifcMethod.name().equals(doc.name())) {
-                  if (ifcMethod.signature().equals(doc.signature())) {
-                    isPrinted = writeMethodComment(ifcMethod, true);
-                    if (isPrinted) {
-                      return true;
-                    }
-                  }
-                }
-              }
-            }
-          }
-        }
-      }
-
-      return isPrinted;
+    writeComment(method.getComment());
+    if (method.getCommentSource() != null) {
+      writeComment(" [JavaDocs note: This comment is inherited from super type " + method.getCommentSource() + ".]");
     }
+    writer.addLineBreak();
+    return true;
   }
 
   public static byte[] hexToBytes(String hexString) {
@@ -1,26 +1,44 @@
 package de.sky40.doclet;
 
+import com.sun.javadoc.DocErrorReporter;
 import com.sun.javadoc.Doclet;
 import com.sun.javadoc.LanguageVersion;
 import com.sun.javadoc.RootDoc;
+import de.sky40.doclet.model.ApiModel;
+import de.sky40.doclet.model.ModelCodec;
 import de.sky40.docxreader.DocXReader;
 import de.sky40.docxreader.domain.DocXReaderResult;
 import de.sky40.docxreader.DocXWriter;
+import de.sky40.docxreader.FragmentCache;
+import de.sky40.docxreader.Log;
+import de.sky40.docxreader.DirectorySink;
+import de.sky40.docxreader.PackageFormat;
+import de.sky40.docxreader.PackageSink;
+import de.sky40.docxreader.TemplateCache;
 import java.io.File;
 
 /**
  * Creates Microsoft Word docx files from JavaDocs and uses a custom template
  * file for styling.
+ *
+ * The doclet can also be run without javadoc to render an API model saved by
+ * an earlier run (see {@link #main(java.lang.String[])}).
  */
 public class DocxDoclet extends Doclet implements Runnable {
 
   private static DocxDoclet theDoclet;
   private BuilderOptions builderOptions;
 
+  /**
+   * The javadoc root node, null if a saved model is rendered.
+   */
   private final RootDoc rootDoc;
 
-  private DocxDoclet(RootDoc rootDoc) {
+  private final String[][] options;
+
+  private DocxDoclet(RootDoc rootDoc, String[][] options) {
     this.rootDoc = rootDoc;
+    this.options = options;
   }
 
   /**
@@ -37,31 +55,109 @@ public class DocxDoclet extends Doclet implements Runnable {
 
     try {
       // read options first
-      this.builderOptions = new BuilderOptions(rootDoc.options());
-      System.out.println("Running doclet with options:");
-      for (String[] opt : this.builderOptions.getOptions()) {
-        for (String o : opt) {
-          System.out.print(o + " ");
+      this.builderOptions = new BuilderOptions(options);
+      Log.setLevel(this.builderOptions.getVerbosity());
+      Log.info("DocXdoclet started.");
+      Log.debug(() -> {
+        StringBuilder sb = new StringBuilder("Running doclet with options:");
+        for (String[] opt : this.builderOptions.getOptions()) {
+          sb.append(System.lineSeparator()).append(String.join(" ", opt));
         }
-        System.out.println();
-      }
+        return sb.toString();
+      });
+
+      RunProfile profile = new RunProfile();
+      RunProfile.Stopwatch stopwatch = profile.start();
 
       // get template file location from doclet options
-      DocXReader templateReader = new DocXReader();
-      String templateFileName = this.builderOptions.getOption(BuilderOptions.OPTION_TEMPLATE_FILENAME, BuilderOptions.OPTION_DEFAULT_TEMPLATE_FILENAME); 
-      File f = new File(templateFileName);
+      File templateCacheDir = this.builderOptions.getTemplateCacheDirectory();
+      TemplateCache templateCache = templateCacheDir == null ? null : new TemplateCache(templateCacheDir);
+      DocXReader templateReader = new DocXReader(templateCache);
+      File f = this.builderOptions.getTemplateFile();
 
       // read in template and create a writer 
       DocXReaderResult readerResult = templateReader.read(f);
-      String outputFileName = this.builderOptions.getOption(BuilderOptions.OPTION_OUTPUT_FILENAME, BuilderOptions.OPTION_DEFAULT_OUTPUT_FILENAME);
-      DocXWriter writer = new DocXWriter(readerResult, outputFileName);
+      if (templateCache != null) {
+        Log.info(templateCache::getReport);
+      }
+      File outputFile = this.builderOptions.getOutputFile();
+      PackageSink sink = this.builderOptions.getFormat() == PackageFormat.DIRECTORY
+              ? PackageSink.toDirectory(outputFile) : PackageSink.toFile(outputFile);
+      DocXWriter writer = new DocXWriter(readerResult, sink);
+      writer.setFormat(this.builderOptions.getFormat());
+      writer.setCompression(this.builderOptions.getCompression());
+      writer.setReproducible(this.builderOptions.isReproducible());
+      if (this.builderOptions.isStreaming()) {
+        writer.startStreaming();
+      }
+      stopwatch.stopPhase("read template");
+
+      ApiModel model;
+      ModelExtractor extractor = new ModelExtractor(this.builderOptions, rootDoc);
+      stopwatch = profile.start();
+      if (rootDoc != null) {
+        model = extractor.extract(rootDoc);
+        File modelFile = this.builderOptions.getSaveModelFile();
+        if (modelFile != null) {
+          ModelCodec.write(model, modelFile);
+          Log.info(() -> "API model saved to " + modelFile);
+        }
+      } else {
+        File modelFile = this.builderOptions.getModelFile();
+        model = ModelCodec.read(modelFile);
+        Log.info(() -> "API model read from " + modelFile);
+        if (this.builderOptions.getClassFilter().hasExcludedAnnotations()) {
+          Log.warn("A saved model has no annotations, -" + BuilderOptions.OPTION_EXCLUDE_ANNOTATIONS + " is not applied.");
+        }
+        model = extractor.filter(model);
+      }
+      stopwatch.stopPhase(rootDoc != null ? "extract model" : "read model");
+      if (extractor.getSkipReport() != null) {
+        Log.info(extractor::getSkipReport);
+      }
 
       DocumentBuilder docBuilder = new DocumentBuilder(builderOptions, writer);
+      docBuilder.setProfile(profile);
+      File fragmentCacheDir = this.builderOptions.getFragmentCacheDirectory();
+      FragmentCache fragmentCache = null;
+      if (fragmentCacheDir != null) {
+        if (this.builderOptions.isStreaming()) {
+          fragmentCache = new FragmentCache(fragmentCacheDir, this.builderOptions.getFragmentCacheSize());
+          docBuilder.setFragmentCache(fragmentCache, readerResult.getTemplateKey());
+        } else {
+          Log.warn("The fragment cache requires -" + BuilderOptions.OPTION_WRITE_MODE + " " + BuilderOptions.WRITE_MODE_STREAM
+                  + " or " + BuilderOptions.WRITE_MODE_PIPELINE + ", it is not used.");
+        }
+      }
 
-      docBuilder.create(rootDoc);
+      docBuilder.create(model);
+      Log.info(docBuilder.getCommentCache()::getReport);
+      if (fragmentCache != null) {
+        fragmentCache.evict();
+        Log.info(fragmentCache::getReport);
+      }
+      Log.info(() -> "Merged " + writer.getMergedRuns() + " adjacent run(s) of the same style.");
+      profile.addPhase("deflate (all threads)", writer.getCompressionNanos());
+      if (writer.getContentHash() != null) {
+        Log.info(() -> "Content hash (SHA-256) " + writer.getContentHash());
+      }
+      if (sink instanceof DirectorySink) {
+        Log.info(((DirectorySink) sink)::getReport);
+      } else if (!writer.isOutputChanged()) {
+        Log.info(() -> "Document unchanged, " + outputFile + " was not rewritten.");
+      }
+      Log.info(profile::getReport);
+      File profileFile = this.builderOptions.getProfileFile();
+      if (profileFile != null) {
+        profile.writeJson(profileFile);
+        Log.info(() -> "Profile written to " + profileFile);
+      }
     } catch (Exception e) {
+      Log.error("Creating the document failed.", e);
       this.successfull = false;
       return;
+    } finally {
+      Log.flush();
     }
     this.successfull = true;
   }
@@ -76,14 +172,50 @@ public class DocxDoclet extends Doclet implements Runnable {
    * @return true on success.
    */
   public static boolean start(RootDoc rootDoc) {
-    System.out.println("DocXdoclet started.");
-
-    theDoclet = new DocxDoclet(rootDoc);
+    theDoclet = new DocxDoclet(rootDoc, rootDoc.options());
     theDoclet.run();
 
     return theDoclet.isSuccessfull();
   }
 
+  /**
+   * Renders an API model saved with the option -savemodel without running
+   * javadoc, e.g. with another template or other options. The arguments are
+   * the options of the doclet, the model is given by the option -model.
+   *
+   * <pre>java -cp docxdoclet.jar de.sky40.doclet.DocxDoclet -model api.model -template template.docx -file javadocs.docx</pre>
+   *
+   * @param args The options as pairs of option name and value.
+   */
+  public static void main(String[] args) {
+    if (args.length % 2 != 0) {
+      Log.error("Usage: DocxDoclet -" + BuilderOptions.OPTION_MODEL + " <file> [-<option> <value>]...");
+      Log.flush();
+      System.exit(1);
+    }
+    String[][] options = new String[args.length / 2][];
+    for (int i = 0; i < options.length; i++) {
+      options[i] = new String[]{args[2 * i], args[2 * i + 1]};
+    }
+    try {
+      if (new BuilderOptions(options).getModelFile() == null) {
+        Log.error("Missing option -" + BuilderOptions.OPTION_MODEL + ".");
+        Log.flush();
+        System.exit(1);
+      }
+    } catch (IllegalArgumentException e) {
+      Log.error(e.getMessage());
+      Log.flush();
+      System.exit(1);
+    }
+
+    theDoclet = new DocxDoclet(null, options);
+    theDoclet.run();
+    if (!theDoclet.isSuccessfull()) {
+      System.exit(1);
+    }
+  }
+
   /**
    * This method is required for inherited classes of
    * {@link com.sun.javadoc.Doclet}
@@ -92,12 +224,27 @@ public class DocxDoclet extends Doclet implements Runnable {
    * @return
    */
   public static int optionLength(String option) {
-    System.out.println("checking availability on option " + option);
+    Log.debug(() -> "checking availability on option " + option);
+
+    return BuilderOptions.getOptionLength(option);
+  }
 
-    if (BuilderOptions.isSupportedOption(option)) {
-      return 2;
+  /**
+   * Checks the values of the options. This method is called by javadoc before
+   * {@link #start(com.sun.javadoc.RootDoc)}.
+   *
+   * @param options The options as provided in the doclet start.
+   * @param reporter The reporter of invalid options.
+   * @return true if the options are valid.
+   */
+  public static boolean validOptions(String[][] options, DocErrorReporter reporter) {
+    try {
+      new BuilderOptions(options);
+      return true;
+    } catch (IllegalArgumentException e) {
+      reporter.printError(e.getMessage());
+      return false;
     }
-    return 0;
   }
 
   /**
@@ -0,0 +1,319 @@
+package de.sky40.doclet;
+
+import com.sun.javadoc.AnnotationDesc;
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.ExecutableMemberDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.RootDoc;
+import com.sun.javadoc.Tag;
+import com.sun.javadoc.ThrowsTag;
+import com.sun.javadoc.Type;
+import de.sky40.doclet.model.ApiModel;
+import de.sky40.doclet.model.ClassModel;
+import de.sky40.doclet.model.FieldModel;
+import de.sky40.doclet.model.MethodModel;
+import de.sky40.doclet.model.PackageModel;
+import de.sky40.doclet.model.ParameterModel;
+import de.sky40.doclet.model.ThrownExceptionModel;
+import de.sky40.docxreader.ParamsInfo;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies everything the document builder needs from the javadoc model into
+ * an {@link ApiModel}. Members of all access levels are extracted, the access
+ * level is applied when rendering. Classes rejected by the {@link ClassFilter}
+ * are skipped before anything else is read from them.
+ *
+ * Not thread-safe, the javadoc model must be read from one thread only.
+ */
+public class ModelExtractor {
+
+  private static final String TAG_VERSION = "version";
+  private static final String TAG_AUTHOR = "author";
+
+  /**
+   * Resolves the docs inherited by methods.
+   */
+  private final OverrideGraph overrides = new OverrideGraph();
+
+  private final ClassFilter filter;
+
+  private final TypeRenderer types;
+
+  /**
+   * The number of skipped classes by reason.
+   */
+  private final Map<ClassFilter.Reason, Integer> skipped = new EnumMap<>(ClassFilter.Reason.class);
+
+  /**
+   * Creates an extractor of all classes.
+   */
+  public ModelExtractor() {
+    this(ClassFilter.ALL, new TypeRenderer());
+  }
+
+  /**
+   * Creates an extractor of the classes accepted by a filter.
+   *
+   * @param filter The filter.
+   * @param types The renderer of parameter and return types.
+   */
+  public ModelExtractor(ClassFilter filter, TypeRenderer types) {
+    this.filter = filter;
+    this.types = types;
+  }
+
+  /**
+   * Creates an extractor configured by builder options: it extracts the
+   * classes accepted by their filter and shortens the types of their short
+   * packages and, unless these are given, of the documented packages.
+   *
+   * @param options The builder options.
+   * @param rootDoc The javadoc root node, null if a saved model is filtered.
+   */
+  public ModelExtractor(BuilderOptions options, RootDoc rootDoc) {
+    this(options.getClassFilter(), new TypeRenderer(getShortPackages(options, rootDoc)));
+  }
+
+  private static Collection<String> getShortPackages(BuilderOptions options, RootDoc rootDoc) {
+    if (rootDoc == null || !options.isShortenDocumentedPackages()) {
+      return options.getShortPackages();
+    }
+    Set<String> packages = new LinkedHashSet<>(options.getShortPackages());
+    for (ClassDoc classDoc : rootDoc.classes()) {
+      packages.add(classDoc.containingPackage().name());
+    }
+    return packages;
+  }
+
+  /**
+   * Extracts the model of a javadoc run.
+   *
+   * @param root The javadoc root node.
+   * @return The model with packages and classes in order of their names.
+   */
+  public ApiModel extract(RootDoc root) {
+    ClassDoc[] classDocs = root.classes();
+    if (!filter.isAll()) {
+      List<ClassDoc> accepted = new ArrayList<>(classDocs.length);
+      for (ClassDoc classDoc : classDocs) {
+        if (accept(classDoc.containingPackage().name(), classDoc.name(), annotationNames(classDoc))) {
+          accepted.add(classDoc);
+        }
+      }
+      classDocs = accepted.toArray(new ClassDoc[accepted.size()]);
+    }
+    List<PackageModel> packages = new ArrayList<>();
+    for (PackageGroups.Group group : new PackageGroups(classDocs).getGroups()) {
+      List<ClassModel> classes = new ArrayList<>(group.getClasses().size());
+      for (ClassDoc classDoc : group.getClasses()) {
+        classes.add(extractClass(classDoc));
+      }
+      packages.add(new PackageModel(group.getPackage().name(), group.getPackage().commentText(), classes));
+    }
+    return new ApiModel(packages);
+  }
+
+  /**
+   * Applies the filter to a saved model. The annotations of the classes are
+   * not part of the model, so excluded annotations are not checked.
+   *
+   * @param model The model.
+   * @return The model without the skipped classes and without packages that
+   * have no classes left.
+   */
+  public ApiModel filter(ApiModel model) {
+    if (filter.isAll()) {
+      return model;
+    }
+    List<PackageModel> packages = new ArrayList<>();
+    for (PackageModel packageModel : model.getPackages()) {
+      List<ClassModel> classes = new ArrayList<>(packageModel.getClasses().size());
+      for (ClassModel classModel : packageModel.getClasses()) {
+        if (accept(packageModel.getName(), classModel.getName(), Collections.<String>emptyList())) {
+          classes.add(classModel);
+        }
+      }
+      if (!classes.isEmpty()) {
+        packages.add(new PackageModel(packageModel.getName(), packageModel.getComment(), classes));
+      }
+    }
+    return new ApiModel(packages);
+  }
+
+  /**
+   * Summarizes the classes skipped by the filter so far.
+   *
+   * @return The summary or null if no class was skipped.
+   */
+  public String getSkipReport() {
+    int total = 0;
+    StringBuilder reasons = new StringBuilder();
+    for (Map.Entry<ClassFilter.Reason, Integer> entry : skipped.entrySet()) {
+      total += entry.getValue();
+      reasons.append(reasons.length() == 0 ? "" : ", ").append(entry.getValue()).append(' ')
+              .append(entry.getKey().name().toLowerCase(Locale.ROOT).replace('_', ' '));
+    }
+    return total == 0 ? null : "Skipped " + total + " class(es): " + reasons + ".";
+  }
+
+  private boolean accept(String packageName, String className, List<String> annotations) {
+    ClassFilter.Reason reason = filter.check(packageName, className, annotations);
+    if (reason != null) {
+      skipped.merge(reason, 1, Integer::sum);
+    }
+    return reason == null;
+  }
+
+  private List<String> annotationNames(ClassDoc classDoc) {
+    if (!filter.hasExcludedAnnotations()) {
+      return Collections.emptyList();
+    }
+    List<String> names = new ArrayList<>();
+    for (AnnotationDesc annotation : classDoc.annotations()) {
+      names.add(annotation.annotationType().qualifiedName());
+    }
+    return names;
+  }
+
+  private ClassModel extractClass(ClassDoc classDoc) {
+    ClassModel.Kind kind;
+    if (classDoc.isEnum()) {
+      kind = ClassModel.Kind.ENUM;
+    } else if (classDoc.isInterface()) {
+      kind = ClassModel.Kind.INTERFACE;
+    } else {
+      kind = ClassModel.Kind.CLASS;
+    }
+
+    List<String> hierarchy = new ArrayList<>();
+    for (ClassDoc d = classDoc; d != null; d = d.superclass()) {
+      hierarchy.add(d.qualifiedName());
+    }
+    Collections.reverse(hierarchy);
+
+    ClassMembers members = new ClassMembers(classDoc, true);
+    List<String> interfaces = new ArrayList<>();
+    for (ClassDoc interfaceDoc : members.getInterfaces()) {
+      interfaces.add(interfaceDoc.qualifiedName());
+    }
+    List<FieldModel> enumConstants = new ArrayList<>();
+    for (FieldDoc field : members.getEnumConstants()) {
+      enumConstants.add(extractField(field));
+    }
+    List<FieldModel> fields = new ArrayList<>();
+    for (FieldDoc field : members.getFields()) {
+      fields.add(extractField(field));
+    }
+    List<MethodModel> constructors = new ArrayList<>();
+    for (ConstructorDoc constructor : members.getConstructors()) {
+      constructors.add(extractMethod(constructor));
+    }
+    List<MethodModel> methods = new ArrayList<>();
+    for (MethodDoc method : members.getMethods()) {
+      methods.add(extractMethod(method));
+    }
+
+    return new ClassModel(classDoc.name(), kind, classDoc.isAbstract(), classDoc.modifiers(), classDoc.commentText(),
+            hierarchy, interfaces, tagTexts(classDoc.tags(TAG_VERSION)), tagTexts(classDoc.tags(TAG_AUTHOR)),
+            enumConstants, fields, constructors, methods);
+  }
+
+  private FieldModel extractField(FieldDoc doc) {
+    FieldModel.Kind kind;
+    if (doc.isEnumConstant()) {
+      kind = FieldModel.Kind.ENUM_CONSTANT;
+    } else if (doc.isEnum()) {
+      kind = FieldModel.Kind.ENUM;
+    } else {
+      kind = FieldModel.Kind.FIELD;
+    }
+    return new FieldModel(doc.name(), kind, doc.isPublic(), doc.modifiers(), doc.commentText());
+  }
+
+  private MethodModel extractMethod(ExecutableMemberDoc doc) {
+    MethodModel.Kind kind;
+    if (doc.isConstructor()) {
+      kind = MethodModel.Kind.CONSTRUCTOR;
+    } else if (doc.isMethod()) {
+      kind = MethodModel.Kind.METHOD;
+    } else {
+      kind = MethodModel.Kind.MEMBER;
+    }
+
+    boolean isOverride = false;
+    for (AnnotationDesc annotation : doc.annotations()) {
+      if ("Override".equals(annotation.annotationType().simpleTypeName())) {
+        isOverride = true;
+      }
+    }
+
+    List<ParameterModel> parameters = new ArrayList<>();
+    Parameter[] docParameters = doc.parameters();
+    for (int i = 0; i < docParameters.length; i++) {
+      Parameter parameter = docParameters[i];
+      ParamsInfo paramInfo = overrides.findCommentedParameter(doc, parameter.name());
+      boolean isVarArgs = i == docParameters.length - 1 && doc.isVarArgs();
+      parameters.add(new ParameterModel(parameter.name(), types.renderParameter(parameter.type(), isVarArgs),
+              paramInfo != null ? paramInfo.getComment() : null));
+    }
+
+    List<ThrownExceptionModel> exceptions = new ArrayList<>();
+    for (Type exception : doc.thrownExceptionTypes()) {
+      exceptions.add(new ThrownExceptionModel(exception.simpleTypeName(), getThrowsComment(doc.throwsTags(), exception.typeName())));
+    }
+
+    String returnType = null;
+    String returnComment = "";
+    if (doc instanceof MethodDoc) {
+      MethodDoc method = (MethodDoc) doc;
+      returnType = types.render(method.returnType());
+      if (!returnType.equals("void")) {
+        returnComment = overrides.findReturnComment(method);
+      }
+    }
+
+    ExecutableMemberDoc source = overrides.findCommentSource(doc);
+    String comment = source != null ? source.commentText() : null;
+    String commentSource = source != null && source != doc ? source.containingClass().qualifiedTypeName() : null;
+
+    return new MethodModel(doc.name(), kind, doc.isPublic(), isOverride, doc.modifiers(), returnType,
+            parameters, exceptions, comment, commentSource, returnComment);
+  }
+
+  /**
+   * Get the comment of a thrown exception by name.
+   *
+   * @param tags the tags to search in
+   * @param name the name to find
+   * @return the comment of the exception with name "name", or empty String if
+   * none was found.
+   */
+  private static String getThrowsComment(ThrowsTag[] tags, String name) {
+    for (ThrowsTag tag : tags) {
+      if (tag.exceptionName().equals(name)) {
+        return tag.exceptionComment();
+      }
+    }
+    return "";
+  }
+
+  private static List<String> tagTexts(Tag[] tags) {
+    List<String> texts = new ArrayList<>(tags.length);
+    for (Tag tag : tags) {
+      texts.add(tag.text());
+    }
+    return texts;
+  }
+}
@@ -0,0 +1,262 @@
+package de.sky40.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ExecutableMemberDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.ParamTag;
+import com.sun.javadoc.Parameter;
+import com.sun.javadoc.Tag;
+import de.sky40.docxreader.ParamsInfo;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the docs a method inherits from the methods it overrides or
+ * implements. A method inherits from its overridden method (recursively) and
+ * from the methods with the same name and signature in all interfaces of its
+ * class, including superinterfaces and the interfaces of superclasses.
+ *
+ * Every type and method is analyzed once per run, the results are memoized.
+ * Not thread-safe.
+ */
+public class OverrideGraph {
+
+  /**
+   * The methods of a type by name and signature.
+   */
+  private final Map<ClassDoc, Map<String, MethodDoc>> methodIndex = new IdentityHashMap<>();
+
+  /**
+   * All interfaces of a type, direct interfaces first.
+   */
+  private final Map<ClassDoc, List<ClassDoc>> superInterfaces = new IdentityHashMap<>();
+
+  /**
+   * A method followed by all methods it inherits docs from, in the order of
+   * precedence.
+   */
+  private final Map<ExecutableMemberDoc, List<ExecutableMemberDoc>> inheritanceChains = new IdentityHashMap<>();
+
+  private final Map<ExecutableMemberDoc, ExecutableMemberDoc> commentSources = new IdentityHashMap<>();
+  private final Map<ExecutableMemberDoc, Map<String, ParamsInfo>> params = new IdentityHashMap<>();
+  private final Map<MethodDoc, String> returnComments = new IdentityHashMap<>();
+
+  /**
+   * Finds the method whose comment documents a method.
+   *
+   * @param doc The method/constructor.
+   * @return doc itself if it has a comment, the nearest method it inherits a
+   * comment from or null if there is no comment at all.
+   */
+  public ExecutableMemberDoc findCommentSource(ExecutableMemberDoc doc) {
+    if (commentSources.containsKey(doc)) {
+      return commentSources.get(doc);
+    }
+    ExecutableMemberDoc source = null;
+    for (ExecutableMemberDoc candidate : getInheritanceChain(doc)) {
+      if (!candidate.commentText().isEmpty()) {
+        source = candidate;
+        break;
+      }
+    }
+    commentSources.put(doc, source);
+    return source;
+  }
+
+  /**
+   * Find the comment of a method parameter by parameter name.
+   *
+   * @param doc The method/constructor to find the comment.
+   * @param name the name of the parameter
+   * @return an info object on the parameter with name "name" or null if the
+   * parameter is not documented.
+   */
+  public ParamsInfo findCommentedParameter(ExecutableMemberDoc doc, String name) {
+    Map<String, ParamsInfo> docParams = params.get(doc);
+    if (docParams == null) {
+      docParams = new HashMap<>();
+      params.put(doc, docParams);
+    } else if (docParams.containsKey(name)) {
+      return docParams.get(name);
+    }
+    ParamsInfo info = null;
+    for (ExecutableMemberDoc candidate : getInheritanceChain(doc)) {
+      info = findCommentedParameter(candidate.parameters(), candidate, name);
+      if (info != null) {
+        break;
+      }
+    }
+    docParams.put(name, info);
+    return info;
+  }
+
+  /**
+   * Finds the comment on the return value of a method.
+   *
+   * @param method The method.
+   * @return The text of the first non-empty @return tag of the method or the
+   * methods it inherits from, or an empty String if none was found.
+   */
+  public String findReturnComment(MethodDoc method) {
+    String comment = returnComments.get(method);
+    if (comment != null) {
+      return comment;
+    }
+    comment = "";
+    for (ExecutableMemberDoc candidate : getInheritanceChain(method)) {
+      Tag[] tags = candidate.tags("return");
+      if (0 < tags.length && !tags[0].text().isEmpty()) {
+        comment = tags[0].text();
+        break;
+      }
+    }
+    returnComments.put(method, comment);
+    return comment;
+  }
+
+  /**
+   * Gets a method followed by all methods it inherits docs from.
+   *
+   * @param doc The method/constructor.
+   * @return The methods in the order of precedence.
+   */
+  private List<ExecutableMemberDoc> getInheritanceChain(ExecutableMemberDoc doc) {
+    List<ExecutableMemberDoc> chain = inheritanceChains.get(doc);
+    if (chain != null) {
+      return chain;
+    }
+    chain = new ArrayList<>();
+    chain.add(doc);
+    // registered before the recursion, so cyclic types end the recursion
+    inheritanceChains.put(doc, chain);
+
+    if (doc instanceof MethodDoc) {
+      MethodDoc overridden = ((MethodDoc) doc).overriddenMethod();
+      if (overridden != null) {
+        addAll(chain, getInheritanceChain(overridden));
+      }
+    }
+
+    String key = doc.name() + doc.signature();
+    for (ClassDoc interfaceDoc : getSuperInterfaces(doc.containingClass())) {
+      MethodDoc ifcMethod = getMethodIndex(interfaceDoc).get(key);
+      if (ifcMethod != null) {
+        addAll(chain, getInheritanceChain(ifcMethod));
+      }
+    }
+    return chain;
+  }
+
+  /**
+   * Gets all interfaces of a type and its superclasses, including the
+   * superinterfaces.
+   *
+   * @param classDoc The type.
+   * @return The interfaces, direct interfaces first.
+   */
+  private List<ClassDoc> getSuperInterfaces(ClassDoc classDoc) {
+    if (classDoc == null) {
+      return Collections.emptyList();
+    }
+    List<ClassDoc> result = superInterfaces.get(classDoc);
+    if (result != null) {
+      return result;
+    }
+    result = new ArrayList<>();
+    Deque<ClassDoc> queue = new ArrayDeque<>();
+    for (ClassDoc type = classDoc; type != null; type = type.superclass()) {
+      addInterfaces(queue, type);
+    }
+    while (!queue.isEmpty()) {
+      ClassDoc interfaceDoc = queue.removeFirst();
+      if (!containsIdentical(result, interfaceDoc)) {
+        result.add(interfaceDoc);
+        addInterfaces(queue, interfaceDoc);
+      }
+    }
+    superInterfaces.put(classDoc, result);
+    return result;
+  }
+
+  /**
+   * Gets the methods of a type by name and signature.
+   *
+   * @param classDoc The type.
+   * @return The methods.
+   */
+  private Map<String, MethodDoc> getMethodIndex(ClassDoc classDoc) {
+    Map<String, MethodDoc> index = methodIndex.get(classDoc);
+    if (index == null) {
+      index = new HashMap<>();
+      MethodDoc[] methods = classDoc.methods();
+      if (methods != null) {
+        for (MethodDoc method : methods) {
+          index.putIfAbsent(method.name() + method.signature(), method);
+        }
+      }
+      methodIndex.put(classDoc, index);
+    }
+    return index;
+  }
+
+  private static void addInterfaces(Deque<ClassDoc> queue, ClassDoc type) {
+    ClassDoc[] interfaces = type.interfaces();
+    if (interfaces != null) {
+      for (ClassDoc interfaceDoc : interfaces) {
+        queue.addLast(interfaceDoc);
+      }
+    }
+  }
+
+  private static <T> void addAll(List<T> target, List<T> source) {
+    for (T element : source) {
+      if (!containsIdentical(target, element)) {
+        target.add(element);
+      }
+    }
+  }
+
+  private static <T> boolean containsIdentical(List<T> list, T element) {
+    for (T e : list) {
+      if (e == element) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static ParamsInfo findCommentedParameter(Parameter[] parameters, ExecutableMemberDoc doc, String name) {
+    for (Parameter parameter : parameters) {
+      if (name.equals(parameter.name())) {
+        String comment = getParamComment(doc.paramTags(), name);
+        if (!comment.isEmpty()) {
+          return new ParamsInfo(parameter, doc, comment);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get the comment of a parameter by param name.
+   *
+   * @param tags the tags to search in
+   * @param name the name to find
+   * @return the comment of the parameter with name "name", or empty String if
+   * none was found.
+   */
+  private static String getParamComment(ParamTag[] tags, String name) {
+    for (ParamTag tag : tags) {
+      if (tag.parameterName().equals(name)) {
+        return tag.parameterComment();
+      }
+    }
+    return "";
+  }
+}
@@ -0,0 +1,117 @@
+package de.sky40.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.PackageDoc;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The classes to document grouped by package. Packages are sorted by name and
+ * the classes of a package by their name, so the order does not depend on the
+ * order javadoc returns the classes in. Names are compared by collation keys
+ * of the root locale, equal keys by the names themselves.
+ *
+ * Immutable.
+ */
+public class PackageGroups {
+
+  /**
+   * A package and its classes.
+   */
+  public static class Group {
+
+    private final PackageDoc packageDoc;
+    private final List<ClassDoc> classes;
+
+    private Group(PackageDoc packageDoc, List<ClassDoc> classes) {
+      this.packageDoc = packageDoc;
+      this.classes = Collections.unmodifiableList(classes);
+    }
+
+    public PackageDoc getPackage() {
+      return packageDoc;
+    }
+
+    /**
+     * The classes of the package.
+     *
+     * @return The classes in order of their names.
+     */
+    public List<ClassDoc> getClasses() {
+      return classes;
+    }
+  }
+
+  /**
+   * An element with its precomputed sort key.
+   */
+  private static class Keyed<T> {
+
+    private final T element;
+    private final String name;
+    private final CollationKey key;
+
+    Keyed(T element, String name, Collator collator) {
+      this.element = element;
+      this.name = name;
+      this.key = collator.getCollationKey(name);
+    }
+  }
+
+  private static final Comparator<Keyed<?>> ORDER = (a, b) -> {
+    int result = a.key.compareTo(b.key);
+    return result != 0 ? result : a.name.compareTo(b.name);
+  };
+
+  private final List<Group> groups;
+
+  /**
+   * Groups classes by package.
+   *
+   * @param classDocs The classes to document.
+   */
+  public PackageGroups(ClassDoc[] classDocs) {
+    Collator collator = Collator.getInstance(Locale.ROOT);
+    Map<String, List<Keyed<ClassDoc>>> index = new HashMap<>();
+    List<Keyed<PackageDoc>> packages = new ArrayList<>();
+    for (ClassDoc classDoc : classDocs) {
+      PackageDoc packageDoc = classDoc.containingPackage();
+      List<Keyed<ClassDoc>> bucket = index.get(packageDoc.name());
+      if (bucket == null) {
+        bucket = new ArrayList<>();
+        index.put(packageDoc.name(), bucket);
+        packages.add(new Keyed<>(packageDoc, packageDoc.name(), collator));
+      }
+      bucket.add(new Keyed<>(classDoc, classDoc.name(), collator));
+    }
+
+    packages.sort(ORDER);
+    List<Group> result = new ArrayList<>(packages.size());
+    for (Keyed<PackageDoc> keyedPackage : packages) {
+      List<Keyed<ClassDoc>> bucket = index.get(keyedPackage.name);
+      bucket.sort(ORDER);
+      List<ClassDoc> classes = new ArrayList<>(bucket.size());
+      for (Keyed<ClassDoc> keyedClass : bucket) {
+        classes.add(keyedClass.element);
+      }
+      result.add(new Group(keyedPackage.element, classes));
+    }
+    this.groups = Collections.unmodifiableList(result);
+  }
+
+  /**
+   * The packages with their classes.
+   *
+   * @return The groups in order of the package names.
+   */
+  public List<Group> getGroups() {
+    return groups;
+  }
+}
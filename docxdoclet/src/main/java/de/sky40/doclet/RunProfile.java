@@ -0,0 +1,278 @@
+package de.sky40.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of the phases of a run
+ * and of every class page, measured on the thread doing the work. CPU time
+ * and allocated bytes are -1 if the VM does not support measuring them.
+ *
+ * Thread-safe, class pages may be measured on any thread.
+ */
+public class RunProfile {
+
+  /**
+   * The number of class pages listed as slowest and largest.
+   */
+  private static final int TOP_CLASSES = 10;
+
+  private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+  private final boolean cpuTimeEnabled;
+
+  /**
+   * The bean with allocation counters, null if they are not supported.
+   */
+  private final com.sun.management.ThreadMXBean allocationBean;
+
+  private final List<Measurement> phases = new ArrayList<>();
+  private final List<Measurement> classPages = new ArrayList<>();
+
+  /**
+   * The times, bytes and text length measured for a phase or a class page.
+   */
+  private static class Measurement {
+
+    private final String name;
+    private final long wallNanos;
+    private final long cpuNanos;
+    private final long allocatedBytes;
+
+    /**
+     * The number of characters of the class page, -1 for phases.
+     */
+    private final long textLength;
+
+    private Measurement(String name, long wallNanos, long cpuNanos, long allocatedBytes, long textLength) {
+      this.name = name;
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.textLength = textLength;
+    }
+  }
+
+  /**
+   * Measures a phase or a class page from its start on the current thread.
+   * Must be stopped on the thread it was started on.
+   */
+  public class Stopwatch {
+
+    private final long startWall;
+    private final long startCpu;
+    private final long startAllocated;
+
+    private Stopwatch() {
+      this.startWall = System.nanoTime();
+      this.startCpu = cpuTime();
+      this.startAllocated = allocatedBytes();
+    }
+
+    /**
+     * Records the measurement as a phase of the run.
+     *
+     * @param name The name of the phase.
+     */
+    public void stopPhase(String name) {
+      Measurement phase = measure(name, -1);
+      synchronized (phases) {
+        phases.add(phase);
+      }
+    }
+
+    /**
+     * Records the measurement as the rendering of a class page.
+     *
+     * @param name The qualified name of the class.
+     * @param textLength The number of characters of the class page.
+     */
+    public void stopClass(String name, long textLength) {
+      Measurement classPage = measure(name, textLength);
+      synchronized (classPages) {
+        classPages.add(classPage);
+      }
+    }
+
+    private Measurement measure(String name, long textLength) {
+      long cpu = startCpu < 0 ? -1 : cpuTime() - startCpu;
+      long allocated = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+      return new Measurement(name, System.nanoTime() - startWall, cpu, allocated, textLength);
+    }
+  }
+
+  /**
+   * Creates an empty profile.
+   */
+  public RunProfile() {
+    this.cpuTimeEnabled = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+    if (threadBean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemoryEnabled()) {
+      this.allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+    } else {
+      this.allocationBean = null;
+    }
+  }
+
+  /**
+   * Records a phase measured elsewhere, e.g. the work of a thread pool, for
+   * which only the time is known.
+   *
+   * @param name The name of the phase.
+   * @param nanos The time in nanoseconds.
+   */
+  public void addPhase(String name, long nanos) {
+    synchronized (phases) {
+      phases.add(new Measurement(name, nanos, -1, -1, -1));
+    }
+  }
+
+  /**
+   * Starts measuring on the current thread.
+   *
+   * @return The stopwatch to stop as a phase or a class page.
+   */
+  public Stopwatch start() {
+    return new Stopwatch();
+  }
+
+  /**
+   * Gets a report on the phases, the sum of all class pages and the slowest
+   * and largest class pages.
+   *
+   * @return The report, one line per phase and class page.
+   */
+  public String getReport() {
+    String nl = System.lineSeparator();
+    StringBuilder sb = new StringBuilder("run profile:");
+    sb.append(nl).append(String.format(Locale.ROOT, "  %-26s %10s %10s %14s", "phase", "wall ms", "cpu ms", "allocated KB"));
+    for (Measurement phase : getPhases()) {
+      appendMeasurement(sb.append(nl), phase.name, phase);
+    }
+    List<Measurement> pages = getClassPages();
+    if (!pages.isEmpty()) {
+      appendMeasurement(sb.append(nl), pages.size() + " class page(s)", sum(pages));
+      sb.append(nl).append("  slowest class pages:");
+      for (Measurement page : top(pages, Comparator.comparingLong(m -> m.wallNanos))) {
+        sb.append(nl).append(String.format(Locale.ROOT, "    %8.1f ms %10d chars  %s", page.wallNanos / 1e6, page.textLength, page.name));
+      }
+      sb.append(nl).append("  largest class pages:");
+      for (Measurement page : top(pages, Comparator.comparingLong(m -> m.textLength))) {
+        sb.append(nl).append(String.format(Locale.ROOT, "    %10d chars %8.1f ms  %s", page.textLength, page.wallNanos / 1e6, page.name));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the profile as JSON, e.g. for trend charts of CI builds.
+   *
+   * @param file The file to write to.
+   * @throws IOException If the file can not be written.
+   */
+  public void writeJson(File file) throws IOException {
+    List<Measurement> pages = getClassPages();
+    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      out.write("{\n  \"phases\": [");
+      writeJsonList(out, getPhases());
+      out.write("],\n  \"classPages\": ");
+      writeJsonObject(out, sum(pages));
+      out.write(",\n  \"classPageCount\": " + pages.size());
+      out.write(",\n  \"slowestClassPages\": [");
+      writeJsonList(out, top(pages, Comparator.comparingLong(m -> m.wallNanos)));
+      out.write("],\n  \"largestClassPages\": [");
+      writeJsonList(out, top(pages, Comparator.comparingLong(m -> m.textLength)));
+      out.write("]\n}\n");
+    }
+  }
+
+  private List<Measurement> getPhases() {
+    synchronized (phases) {
+      return new ArrayList<>(phases);
+    }
+  }
+
+  private List<Measurement> getClassPages() {
+    synchronized (classPages) {
+      return new ArrayList<>(classPages);
+    }
+  }
+
+  private long cpuTime() {
+    return cpuTimeEnabled ? threadBean.getCurrentThreadCpuTime() : -1;
+  }
+
+  private long allocatedBytes() {
+    return allocationBean != null ? allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+  }
+
+  private static Measurement sum(List<Measurement> measurements) {
+    long wall = 0;
+    long cpu = 0;
+    long allocated = 0;
+    long textLength = 0;
+    for (Measurement m : measurements) {
+      wall += m.wallNanos;
+      cpu = cpu < 0 || m.cpuNanos < 0 ? -1 : cpu + m.cpuNanos;
+      allocated = allocated < 0 || m.allocatedBytes < 0 ? -1 : allocated + m.allocatedBytes;
+      textLength += m.textLength;
+    }
+    return new Measurement("class pages", wall, cpu, allocated, textLength);
+  }
+
+  private static List<Measurement> top(List<Measurement> measurements, Comparator<Measurement> comparator) {
+    List<Measurement> sorted = new ArrayList<>(measurements);
+    Collections.sort(sorted, comparator.reversed());
+    return sorted.subList(0, Math.min(TOP_CLASSES, sorted.size()));
+  }
+
+  private static void appendMeasurement(StringBuilder sb, String name, Measurement m) {
+    sb.append(String.format(Locale.ROOT, "  %-26s %10.1f %10s %14s", name, m.wallNanos / 1e6,
+            m.cpuNanos < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", m.cpuNanos / 1e6),
+            m.allocatedBytes < 0 ? "n/a" : String.valueOf(m.allocatedBytes / 1024)));
+  }
+
+  private static void writeJsonList(Writer out, List<Measurement> measurements) throws IOException {
+    for (int i = 0; i < measurements.size(); i++) {
+      out.write(i == 0 ? "\n    " : ",\n    ");
+      writeJsonObject(out, measurements.get(i));
+    }
+    if (!measurements.isEmpty()) {
+      out.write("\n  ");
+    }
+  }
+
+  private static void writeJsonObject(Writer out, Measurement m) throws IOException {
+    out.write("{\"name\": " + jsonString(m.name) + ", \"wallNanos\": " + m.wallNanos + ", \"cpuNanos\": " + m.cpuNanos
+            + ", \"allocatedBytes\": " + m.allocatedBytes);
+    if (0 <= m.textLength) {
+      out.write(", \"textLength\": " + m.textLength);
+    }
+    out.write("}");
+  }
+
+  private static String jsonString(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -0,0 +1,163 @@
+package de.sky40.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ParameterizedType;
+import com.sun.javadoc.Type;
+import com.sun.javadoc.TypeVariable;
+import com.sun.javadoc.WildcardType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders types as in the source, including type arguments, wildcards, type
+ * variables and array dimensions, e.g. "Map&lt;String, ? extends
+ * List&lt;T&gt;&gt;[]". Classes of the shortened packages are rendered
+ * without their package, all other classes with their qualified name.
+ *
+ * Rendered types are memoized by their qualified form, which javadoc creates
+ * anew for every occurrence of a type.
+ *
+ * Thread-safe.
+ */
+public class TypeRenderer {
+
+  /**
+   * The packages shortened by default.
+   */
+  public static final List<String> DEFAULT_SHORTENED_PACKAGES = Collections.unmodifiableList(
+          Arrays.asList("java.lang", "java.util", "java.io", "java.nio"));
+
+  private static final String VARARGS = "...";
+
+  private final Set<String> shortenedPackages;
+
+  /**
+   * The rendered types by their qualified form.
+   */
+  private final ConcurrentMap<String, String> cache = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a renderer shortening the {@link #DEFAULT_SHORTENED_PACKAGES}.
+   */
+  public TypeRenderer() {
+    this(DEFAULT_SHORTENED_PACKAGES);
+  }
+
+  /**
+   * Creates a renderer.
+   *
+   * @param shortenedPackages The names of the packages whose classes are
+   * rendered without the package. Subpackages are not shortened.
+   */
+  public TypeRenderer(Collection<String> shortenedPackages) {
+    this.shortenedPackages = Collections.unmodifiableSet(new HashSet<>(shortenedPackages));
+  }
+
+  /**
+   * Renders a type.
+   *
+   * @param type The type.
+   * @return The type as in the source.
+   */
+  public String render(Type type) {
+    // not computeIfAbsent, the type arguments are rendered recursively
+    String key = type.toString();
+    String rendered = cache.get(key);
+    if (rendered == null) {
+      rendered = renderElementType(type) + type.dimension();
+      String previous = cache.putIfAbsent(key, rendered);
+      if (previous != null) {
+        rendered = previous;
+      }
+    }
+    return rendered;
+  }
+
+  /**
+   * Renders the type of a parameter.
+   *
+   * @param type The type of the parameter.
+   * @param isVarArgs True if the parameter is the variable arity parameter of
+   * its method, its last array dimension is rendered as "...".
+   * @return The type as in the source.
+   */
+  public String renderParameter(Type type, boolean isVarArgs) {
+    String rendered = render(type);
+    if (isVarArgs && rendered.endsWith("[]")) {
+      return rendered.substring(0, rendered.length() - 2) + VARARGS;
+    }
+    return rendered;
+  }
+
+  /**
+   * Renders a type without its array dimensions.
+   */
+  private String renderElementType(Type type) {
+    if (type.isPrimitive()) {
+      return type.typeName();
+    }
+    WildcardType wildcard = type.asWildcardType();
+    if (wildcard != null) {
+      if (0 < wildcard.extendsBounds().length) {
+        return "? extends " + renderAll(wildcard.extendsBounds(), " & ");
+      }
+      if (0 < wildcard.superBounds().length) {
+        return "? super " + renderAll(wildcard.superBounds(), " & ");
+      }
+      return "?";
+    }
+    TypeVariable variable = type.asTypeVariable();
+    if (variable != null) {
+      return variable.typeName();
+    }
+    ParameterizedType parameterized = type.asParameterizedType();
+    if (parameterized != null) {
+      Type containing = parameterized.containingType();
+      String name;
+      if (containing != null && containing.asParameterizedType() != null) {
+        name = render(containing) + "." + parameterized.simpleTypeName();
+      } else {
+        name = renderClassName(parameterized);
+      }
+      Type[] arguments = parameterized.typeArguments();
+      return arguments.length == 0 ? name : name + "<" + renderAll(arguments, ", ") + ">";
+    }
+    return renderClassName(type);
+  }
+
+  /**
+   * Renders the name of a class type, nested classes with their enclosing
+   * classes.
+   */
+  private String renderClassName(Type type) {
+    String qualifiedName = type.qualifiedTypeName();
+    String name = type.typeName();
+    String packageName;
+    ClassDoc classDoc = type.asClassDoc();
+    if (classDoc != null && classDoc.containingPackage() != null) {
+      packageName = classDoc.containingPackage().name();
+    } else if (qualifiedName.endsWith("." + name)) {
+      packageName = qualifiedName.substring(0, qualifiedName.length() - name.length() - 1);
+    } else {
+      packageName = "";
+    }
+    return shortenedPackages.contains(packageName) || packageName.isEmpty() ? name : qualifiedName;
+  }
+
+  private String renderAll(Type[] types, String separator) {
+    StringBuilder sb = new StringBuilder();
+    for (Type type : types) {
+      if (0 < sb.length()) {
+        sb.append(separator);
+      }
+      sb.append(render(type));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,30 @@
+package de.sky40.doclet.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the document builder needs to know about the documented API,
+ * independent of a javadoc run. The model is extracted from javadoc once and
+ * can be saved by {@link ModelCodec}, so a document can be rendered again
+ * with another template or other options without running javadoc.
+ *
+ * Immutable.
+ */
+public class ApiModel {
+
+  private final List<PackageModel> packages;
+
+  /**
+   * Creates a model.
+   *
+   * @param packages The packages in order of their chapters.
+   */
+  public ApiModel(List<PackageModel> packages) {
+    this.packages = Collections.unmodifiableList(packages);
+  }
+
+  public List<PackageModel> getPackages() {
+    return packages;
+  }
+}
@@ -0,0 +1,123 @@
+package de.sky40.doclet.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class, interface or enum with all of its members, regardless of their
+ * access level.
+ *
+ * Immutable.
+ */
+public class ClassModel {
+
+  /**
+   * The kinds of types.
+   */
+  public enum Kind {
+    CLASS, INTERFACE, ENUM
+  }
+
+  private final String name;
+  private final Kind kind;
+  private final boolean isAbstract;
+  private final String modifiers;
+  private final String comment;
+  private final List<String> hierarchy;
+  private final List<String> interfaces;
+  private final List<String> versions;
+  private final List<String> authors;
+  private final List<FieldModel> enumConstants;
+  private final List<FieldModel> fields;
+  private final List<MethodModel> constructors;
+  private final List<MethodModel> methods;
+
+  /**
+   * Creates a class.
+   *
+   * @param name The (simple) name.
+   * @param kind The kind of type.
+   * @param isAbstract True if the class is abstract.
+   * @param modifiers The modifiers as in the source.
+   * @param comment The comment text, may be empty.
+   * @param hierarchy The qualified names of the superclasses, the topmost
+   * first, followed by the qualified name of the class itself.
+   * @param interfaces The qualified names of the interfaces the class
+   * implements directly.
+   * @param versions The texts of the @version tags.
+   * @param authors The texts of the @author tags.
+   * @param enumConstants The enum constants.
+   * @param fields The fields.
+   * @param constructors The constructors.
+   * @param methods The methods.
+   */
+  public ClassModel(String name, Kind kind, boolean isAbstract, String modifiers, String comment,
+          List<String> hierarchy, List<String> interfaces, List<String> versions, List<String> authors,
+          List<FieldModel> enumConstants, List<FieldModel> fields, List<MethodModel> constructors, List<MethodModel> methods) {
+    this.name = name;
+    this.kind = kind;
+    this.isAbstract = isAbstract;
+    this.modifiers = modifiers;
+    this.comment = comment;
+    this.hierarchy = Collections.unmodifiableList(hierarchy);
+    this.interfaces = Collections.unmodifiableList(interfaces);
+    this.versions = Collections.unmodifiableList(versions);
+    this.authors = Collections.unmodifiableList(authors);
+    this.enumConstants = Collections.unmodifiableList(enumConstants);
+    this.fields = Collections.unmodifiableList(fields);
+    this.constructors = Collections.unmodifiableList(constructors);
+    this.methods = Collections.unmodifiableList(methods);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public boolean isAbstract() {
+    return isAbstract;
+  }
+
+  public String getModifiers() {
+    return modifiers;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+
+  public List<String> getHierarchy() {
+    return hierarchy;
+  }
+
+  public List<String> getInterfaces() {
+    return interfaces;
+  }
+
+  public List<String> getVersions() {
+    return versions;
+  }
+
+  public List<String> getAuthors() {
+    return authors;
+  }
+
+  public List<FieldModel> getEnumConstants() {
+    return enumConstants;
+  }
+
+  public List<FieldModel> getFields() {
+    return fields;
+  }
+
+  public List<MethodModel> getConstructors() {
+    return constructors;
+  }
+
+  public List<MethodModel> getMethods() {
+    return methods;
+  }
+}
@@ -0,0 +1,59 @@
+package de.sky40.doclet.model;
+
+/**
+ * A field or enum constant.
+ *
+ * Immutable.
+ */
+public class FieldModel {
+
+  /**
+   * The kinds of fields.
+   */
+  public enum Kind {
+    FIELD, ENUM_CONSTANT, ENUM
+  }
+
+  private final String name;
+  private final Kind kind;
+  private final boolean isPublic;
+  private final String modifiers;
+  private final String comment;
+
+  /**
+   * Creates a field.
+   *
+   * @param name The name.
+   * @param kind The kind of field.
+   * @param isPublic True if the field is public.
+   * @param modifiers The modifiers as in the source.
+   * @param comment The comment text, may be empty.
+   */
+  public FieldModel(String name, Kind kind, boolean isPublic, String modifiers, String comment) {
+    this.name = name;
+    this.kind = kind;
+    this.isPublic = isPublic;
+    this.modifiers = modifiers;
+    this.comment = comment;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public boolean isPublic() {
+    return isPublic;
+  }
+
+  public String getModifiers() {
+    return modifiers;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+}
@@ -0,0 +1,110 @@
+package de.sky40.doclet.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A method or constructor. The docs the member inherits from the methods it
+ * overrides are resolved on extraction.
+ *
+ * Immutable.
+ */
+public class MethodModel {
+
+  /**
+   * The kinds of executable members.
+   */
+  public enum Kind {
+    CONSTRUCTOR, METHOD, MEMBER
+  }
+
+  private final String name;
+  private final Kind kind;
+  private final boolean isPublic;
+  private final boolean isOverride;
+  private final String modifiers;
+  private final String returnType;
+  private final List<ParameterModel> parameters;
+  private final List<ThrownExceptionModel> exceptions;
+  private final String comment;
+  private final String commentSource;
+  private final String returnComment;
+
+  /**
+   * Creates a method.
+   *
+   * @param name The name.
+   * @param kind The kind of member.
+   * @param isPublic True if the member is public.
+   * @param isOverride True if the member is annotated with @Override.
+   * @param modifiers The modifiers as in the source.
+   * @param returnType The return type as rendered by the
+   * {@link de.sky40.doclet.TypeRenderer}, null for constructors.
+   * @param parameters The parameters.
+   * @param exceptions The declared exceptions.
+   * @param comment The comment text, possibly inherited, or null if there is
+   * none.
+   * @param commentSource The qualified name of the type the comment is
+   * inherited from, null if the member has its own comment.
+   * @param returnComment The comment on the return value, possibly inherited,
+   * empty if there is none.
+   */
+  public MethodModel(String name, Kind kind, boolean isPublic, boolean isOverride, String modifiers, String returnType,
+          List<ParameterModel> parameters, List<ThrownExceptionModel> exceptions, String comment, String commentSource, String returnComment) {
+    this.name = name;
+    this.kind = kind;
+    this.isPublic = isPublic;
+    this.isOverride = isOverride;
+    this.modifiers = modifiers;
+    this.returnType = returnType;
+    this.parameters = Collections.unmodifiableList(parameters);
+    this.exceptions = Collections.unmodifiableList(exceptions);
+    this.comment = comment;
+    this.commentSource = commentSource;
+    this.returnComment = returnComment;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public boolean isPublic() {
+    return isPublic;
+  }
+
+  public boolean isOverride() {
+    return isOverride;
+  }
+
+  public String getModifiers() {
+    return modifiers;
+  }
+
+  public String getReturnType() {
+    return returnType;
+  }
+
+  public List<ParameterModel> getParameters() {
+    return parameters;
+  }
+
+  public List<ThrownExceptionModel> getExceptions() {
+    return exceptions;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+
+  public String getCommentSource() {
+    return commentSource;
+  }
+
+  public String getReturnComment() {
+    return returnComment;
+  }
+}
@@ -0,0 +1,297 @@
+package de.sky40.doclet.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes {@link ApiModel}s in a compact binary format. Every
+ * distinct string (names, modifiers, types, comments) is written once and
+ * referenced by its index afterwards.
+ *
+ * The format starts with a magic number and a version. Files of other
+ * versions are rejected.
+ */
+public class ModelCodec {
+
+  private static final int MAGIC = 0x44584d44; // "DXMD"
+  private static final int VERSION = 2;
+
+  private static final int NULL_STRING = -1;
+  private static final int NEW_STRING = -2;
+
+  /**
+   * Reads or writes a single element of a list.
+   */
+  private interface ElementWriter<T> {
+
+    void write(T element) throws IOException;
+  }
+
+  private interface ElementReader<T> {
+
+    T read() throws IOException;
+  }
+
+  private ModelCodec() {
+  }
+
+  /**
+   * Writes a model to a file.
+   *
+   * @param model The model to write.
+   * @param file The file to write to.
+   * @throws IOException If the file could not be written.
+   */
+  public static void write(ApiModel model, File file) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      write(model, out);
+    }
+  }
+
+  /**
+   * Writes a model to a stream. The stream is not closed.
+   *
+   * @param model The model to write.
+   * @param out The stream to write to.
+   * @throws IOException If the stream could not be written.
+   */
+  public static void write(ApiModel model, OutputStream out) throws IOException {
+    Writer writer = new Writer(new DataOutputStream(new BufferedOutputStream(out)));
+    writer.writeModel(model);
+    writer.out.flush();
+  }
+
+  /**
+   * Writes a single class to a stream, e.g. to calculate a fingerprint of
+   * the class. The stream is not closed.
+   *
+   * @param classModel The class to write.
+   * @param out The stream to write to.
+   * @throws IOException If the stream could not be written.
+   */
+  public static void write(ClassModel classModel, OutputStream out) throws IOException {
+    Writer writer = new Writer(new DataOutputStream(new BufferedOutputStream(out)));
+    writer.writeClass(classModel);
+    writer.out.flush();
+  }
+
+  /**
+   * Reads a model from a file.
+   *
+   * @param file The file to read.
+   * @return The model.
+   * @throws IOException If the file could not be read or is no model of this
+   * version.
+   */
+  public static ApiModel read(File file) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * Reads a model from a stream. The stream is not closed.
+   *
+   * @param in The stream to read.
+   * @return The model.
+   * @throws IOException If the stream could not be read or contains no model
+   * of this version.
+   */
+  public static ApiModel read(InputStream in) throws IOException {
+    return new Reader(new DataInputStream(new BufferedInputStream(in))).readModel();
+  }
+
+  private static class Writer {
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    Writer(DataOutputStream out) {
+      this.out = out;
+    }
+
+    void writeModel(ApiModel model) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeList(model.getPackages(), this::writePackage);
+    }
+
+    void writePackage(PackageModel packageModel) throws IOException {
+      writeString(packageModel.getName());
+      writeString(packageModel.getComment());
+      writeList(packageModel.getClasses(), this::writeClass);
+    }
+
+    void writeClass(ClassModel classModel) throws IOException {
+      writeString(classModel.getName());
+      out.writeByte(classModel.getKind().ordinal());
+      out.writeBoolean(classModel.isAbstract());
+      writeString(classModel.getModifiers());
+      writeString(classModel.getComment());
+      writeList(classModel.getHierarchy(), this::writeString);
+      writeList(classModel.getInterfaces(), this::writeString);
+      writeList(classModel.getVersions(), this::writeString);
+      writeList(classModel.getAuthors(), this::writeString);
+      writeList(classModel.getEnumConstants(), this::writeField);
+      writeList(classModel.getFields(), this::writeField);
+      writeList(classModel.getConstructors(), this::writeMethod);
+      writeList(classModel.getMethods(), this::writeMethod);
+    }
+
+    void writeField(FieldModel field) throws IOException {
+      writeString(field.getName());
+      out.writeByte(field.getKind().ordinal());
+      out.writeBoolean(field.isPublic());
+      writeString(field.getModifiers());
+      writeString(field.getComment());
+    }
+
+    void writeMethod(MethodModel method) throws IOException {
+      writeString(method.getName());
+      out.writeByte(method.getKind().ordinal());
+      out.writeBoolean(method.isPublic());
+      out.writeBoolean(method.isOverride());
+      writeString(method.getModifiers());
+      writeString(method.getReturnType());
+      writeList(method.getParameters(), parameter -> {
+        writeString(parameter.getName());
+        writeString(parameter.getType());
+        writeString(parameter.getComment());
+      });
+      writeList(method.getExceptions(), exception -> {
+        writeString(exception.getName());
+        writeString(exception.getComment());
+      });
+      writeString(method.getComment());
+      writeString(method.getCommentSource());
+      writeString(method.getReturnComment());
+    }
+
+    <T> void writeList(List<T> list, ElementWriter<T> elementWriter) throws IOException {
+      out.writeInt(list.size());
+      for (T element : list) {
+        elementWriter.write(element);
+      }
+    }
+
+    void writeString(String s) throws IOException {
+      if (s == null) {
+        out.writeInt(NULL_STRING);
+        return;
+      }
+      Integer index = strings.get(s);
+      if (index != null) {
+        out.writeInt(index);
+        return;
+      }
+      strings.put(s, strings.size());
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(NEW_STRING);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static class Reader {
+
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<>();
+
+    Reader(DataInputStream in) {
+      this.in = in;
+    }
+
+    ApiModel readModel() throws IOException {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not an API model file.");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported API model version " + version + ", expected " + VERSION + ".");
+      }
+      return new ApiModel(readList(this::readPackage));
+    }
+
+    PackageModel readPackage() throws IOException {
+      return new PackageModel(readString(), readString(), readList(this::readClass));
+    }
+
+    ClassModel readClass() throws IOException {
+      String name = readString();
+      ClassModel.Kind kind = ClassModel.Kind.values()[in.readByte()];
+      boolean isAbstract = in.readBoolean();
+      String modifiers = readString();
+      String comment = readString();
+      List<String> hierarchy = readList(this::readString);
+      List<String> interfaces = readList(this::readString);
+      List<String> versions = readList(this::readString);
+      List<String> authors = readList(this::readString);
+      List<FieldModel> enumConstants = readList(this::readField);
+      List<FieldModel> fields = readList(this::readField);
+      List<MethodModel> constructors = readList(this::readMethod);
+      List<MethodModel> methods = readList(this::readMethod);
+      return new ClassModel(name, kind, isAbstract, modifiers, comment, hierarchy, interfaces, versions, authors,
+              enumConstants, fields, constructors, methods);
+    }
+
+    FieldModel readField() throws IOException {
+      String name = readString();
+      FieldModel.Kind kind = FieldModel.Kind.values()[in.readByte()];
+      boolean isPublic = in.readBoolean();
+      return new FieldModel(name, kind, isPublic, readString(), readString());
+    }
+
+    MethodModel readMethod() throws IOException {
+      String name = readString();
+      MethodModel.Kind kind = MethodModel.Kind.values()[in.readByte()];
+      boolean isPublic = in.readBoolean();
+      boolean isOverride = in.readBoolean();
+      String modifiers = readString();
+      String returnType = readString();
+      List<ParameterModel> parameters = readList(() -> new ParameterModel(readString(), readString(), readString()));
+      List<ThrownExceptionModel> exceptions = readList(() -> new ThrownExceptionModel(readString(), readString()));
+      String comment = readString();
+      String commentSource = readString();
+      String returnComment = readString();
+      return new MethodModel(name, kind, isPublic, isOverride, modifiers, returnType, parameters, exceptions,
+              comment, commentSource, returnComment);
+    }
+
+    <T> List<T> readList(ElementReader<T> elementReader) throws IOException {
+      int size = in.readInt();
+      List<T> list = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        list.add(elementReader.read());
+      }
+      return list;
+    }
+
+    String readString() throws IOException {
+      int index = in.readInt();
+      if (index == NULL_STRING) {
+        return null;
+      }
+      if (index != NEW_STRING) {
+        return strings.get(index);
+      }
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      String s = new String(bytes, StandardCharsets.UTF_8);
+      strings.add(s);
+      return s;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package de.sky40.doclet.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A package and its classes.
+ *
+ * Immutable.
+ */
+public class PackageModel {
+
+  private final String name;
+  private final String comment;
+  private final List<ClassModel> classes;
+
+  /**
+   * Creates a package.
+   *
+   * @param name The name of the package.
+   * @param comment The comment text, may be empty.
+   * @param classes The classes in order of their pages.
+   */
+  public PackageModel(String name, String comment, List<ClassModel> classes) {
+    this.name = name;
+    this.comment = comment;
+    this.classes = Collections.unmodifiableList(classes);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+
+  public List<ClassModel> getClasses() {
+    return classes;
+  }
+}
@@ -0,0 +1,39 @@
+package de.sky40.doclet.model;
+
+/**
+ * A parameter of a method or constructor.
+ *
+ * Immutable.
+ */
+public class ParameterModel {
+
+  private final String name;
+  private final String type;
+  private final String comment;
+
+  /**
+   * Creates a parameter.
+   *
+   * @param name The name.
+   * @param type The type as rendered by the {@link de.sky40.doclet.TypeRenderer}.
+   * @param comment The comment of the parameter, possibly inherited, or null
+   * if the parameter is not documented.
+   */
+  public ParameterModel(String name, String type, String comment) {
+    this.name = name;
+    this.type = type;
+    this.comment = comment;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+}
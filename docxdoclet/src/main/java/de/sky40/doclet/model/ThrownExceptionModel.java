@@ -0,0 +1,31 @@
+package de.sky40.doclet.model;
+
+/**
+ * An exception declared to be thrown by a method or constructor.
+ *
+ * Immutable.
+ */
+public class ThrownExceptionModel {
+
+  private final String name;
+  private final String comment;
+
+  /**
+   * Creates an exception.
+   *
+   * @param name The simple name of the exception type.
+   * @param comment The text of the @throws tag, empty if there is none.
+   */
+  public ThrownExceptionModel(String name, String comment) {
+    this.name = name;
+    this.comment = comment;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getComment() {
+    return comment;
+  }
+}
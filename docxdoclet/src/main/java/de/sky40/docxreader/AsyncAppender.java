@@ -0,0 +1,105 @@
+package de.sky40.docxreader;
+
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes log lines to a stream on a background thread, so the threads
+ * creating the document do not wait for console output. The queue is
+ * bounded, a thread logging faster than the lines are written waits instead
+ * of dropping lines.
+ *
+ * Thread-safe.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class AsyncAppender {
+
+  private static final int QUEUE_SIZE = 1024;
+
+  private final PrintStream out;
+  private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+  /**
+   * The writing thread, started with the first line.
+   */
+  private Thread thread;
+
+  /**
+   * The number of lines appended and written, guarded by this.
+   */
+  private long appended;
+  private long written;
+
+  /**
+   * Creates an appender.
+   *
+   * @param out The stream to write the lines to.
+   */
+  public AsyncAppender(PrintStream out) {
+    this.out = out;
+  }
+
+  /**
+   * Queues a line to be written.
+   *
+   * @param line The line.
+   */
+  public void append(String line) {
+    synchronized (this) {
+      if (thread == null) {
+        thread = new Thread(this::writeLines, "docxdoclet-log");
+        thread.setDaemon(true);
+        thread.start();
+      }
+      appended++;
+    }
+    try {
+      queue.put(line);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      // write directly rather than losing the line
+      out.println(line);
+      lineWritten();
+    }
+  }
+
+  /**
+   * Waits until all lines appended so far are written.
+   */
+  public synchronized void flush() {
+    boolean interrupted = false;
+    while (written < appended) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeLines() {
+    while (true) {
+      String line;
+      try {
+        line = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      out.println(line);
+      if (queue.isEmpty()) {
+        out.flush();
+      }
+      lineWritten();
+    }
+  }
+
+  private synchronized void lineWritten() {
+    written++;
+    notifyAll();
+  }
+}
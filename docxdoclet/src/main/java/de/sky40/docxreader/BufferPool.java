@@ -0,0 +1,79 @@
+package de.sky40.docxreader;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of the fixed size chunks {@link PooledBuffer}s consist of. A
+ * service writing documents again and again reuses the memory of released
+ * buffers instead of allocating (and collecting) a new buffer of the size of
+ * a document for every request.
+ *
+ * Thread-safe, may be shared by all writers of a service.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class BufferPool {
+
+  /**
+   * The default size of a chunk.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+  private final int chunkSize;
+
+  /**
+   * The maximum number of free chunks kept, further released chunks are left
+   * to the garbage collector.
+   */
+  private final int maxFreeChunks;
+
+  private final Deque<byte[]> freeChunks = new ArrayDeque<>();
+
+  /**
+   * Creates a pool.
+   *
+   * @param chunkSize The size of a chunk in bytes.
+   * @param maxPooledBytes The maximum number of bytes kept for reuse.
+   */
+  public BufferPool(int chunkSize, long maxPooledBytes) {
+    if (chunkSize < 1 || maxPooledBytes < 0) {
+      throw new IllegalArgumentException("Invalid chunk size " + chunkSize + " or pool size " + maxPooledBytes);
+    }
+    this.chunkSize = chunkSize;
+    this.maxFreeChunks = (int) Math.min(Integer.MAX_VALUE, maxPooledBytes / chunkSize);
+  }
+
+  /**
+   * Creates an empty buffer.
+   *
+   * @return The buffer. Must be released to return its memory to the pool.
+   */
+  public PooledBuffer newBuffer() {
+    return new PooledBuffer(this);
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Gets the number of free chunks.
+   *
+   * @return The number of chunks kept for reuse.
+   */
+  public synchronized int getFreeChunks() {
+    return freeChunks.size();
+  }
+
+  synchronized byte[] takeChunk() {
+    byte[] chunk = freeChunks.pollLast();
+    return chunk != null ? chunk : new byte[chunkSize];
+  }
+
+  synchronized void releaseChunk(byte[] chunk) {
+    if (freeChunks.size() < maxFreeChunks) {
+      freeChunks.addLast(chunk);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package de.sky40.docxreader;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A sink writing to an in-memory buffer of a {@link BufferPool}, e.g. for a
+ * service which sends the document to clients without writing it to disk.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class BufferSink extends PackageSink {
+
+  private final BufferPool pool;
+
+  /**
+   * The buffer holding the package, null until the package is written.
+   */
+  private PooledBuffer buffer;
+
+  private boolean isCommitted = false;
+
+  BufferSink(BufferPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public String getName() {
+    return "buffer";
+  }
+
+  /**
+   * Gets the buffer holding the package. Every package written successfully
+   * gets a new buffer, so the buffer stays valid when the sink is used again.
+   *
+   * @return The buffer, null if no package was written successfully. Must be
+   * released by the caller.
+   */
+  public PooledBuffer getBuffer() {
+    return isCommitted ? buffer : null;
+  }
+
+  @Override
+  WritableByteChannel open(boolean reproducible) {
+    if (buffer != null && !isCommitted) {
+      // never handed out, a committed buffer belongs to the caller
+      buffer.release();
+    }
+    buffer = pool.newBuffer();
+    isCommitted = false;
+    return buffer;
+  }
+
+  @Override
+  void commit() {
+    buffer.close();
+    isCommitted = true;
+  }
+
+  @Override
+  void discard() {
+    if (buffer != null && !isCommitted) {
+      buffer.release();
+      buffer = null;
+    }
+  }
+}
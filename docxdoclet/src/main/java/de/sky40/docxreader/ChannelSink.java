@@ -0,0 +1,86 @@
+package de.sky40.docxreader;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A sink writing to a channel or stream of the caller, which is flushed on
+ * commit but never closed. The channel is not seekable, so entries stored
+ * without compression are buffered until they are complete.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+class ChannelSink extends PackageSink {
+
+  private final WritableByteChannel target;
+
+  /**
+   * The stream the channel writes to, flushed on commit, null for a channel.
+   */
+  private final Flushable flushable;
+
+  private final String name;
+
+  ChannelSink(WritableByteChannel target, Flushable flushable, String name) {
+    this.target = target;
+    this.flushable = flushable;
+    this.name = name;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  WritableByteChannel open(boolean reproducible) {
+    return new UnclosedChannel(target);
+  }
+
+  @Override
+  void commit() throws IOException {
+    if (flushable != null) {
+      flushable.flush();
+    }
+  }
+
+  @Override
+  void discard() {
+    // the caller decides what to do with a partially written stream
+  }
+
+  /**
+   * Passes the bytes to a channel which is left open when this channel is
+   * closed.
+   */
+  private static final class UnclosedChannel implements WritableByteChannel {
+
+    private final WritableByteChannel delegate;
+    private boolean isOpen = true;
+
+    UnclosedChannel(WritableByteChannel delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (!isOpen) {
+        throw new ClosedChannelException();
+      }
+      return delegate.write(src);
+    }
+
+    @Override
+    public boolean isOpen() {
+      return isOpen;
+    }
+
+    @Override
+    public void close() {
+      isOpen = false;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package de.sky40.docxreader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the chapters of a streamed document on a background thread. The
+ * builder renders a chapter into fragments and submits it; the background
+ * thread serializes the fragments and adds them to the document, which
+ * compresses and writes them, while the builder renders the next chapter.
+ *
+ * The queue of submitted chapters is bounded: a builder faster than the
+ * writing thread waits, so only a few chapters are held in memory. A failure
+ * on either side cancels the other one; chapters not yet written are
+ * dropped.
+ *
+ * Thread-safe.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class ChapterPipeline {
+
+  /**
+   * Marks the end of the chapters in the queue.
+   */
+  private static final List<DocXWriter> END = Collections.emptyList();
+
+  private final DocXWriter document;
+  private final BlockingQueue<List<DocXWriter>> queue;
+  private final Thread thread;
+
+  /**
+   * The first failure of the writing thread, null as long as all chapters are
+   * written.
+   */
+  private volatile Throwable failure;
+
+  private volatile boolean isCancelled = false;
+  private boolean isClosed = false;
+
+  /**
+   * The time the writing thread spent writing chapters.
+   */
+  private volatile long busyNanos = 0;
+
+  /**
+   * Creates a pipeline and starts its writing thread.
+   *
+   * @param document The streamed document the chapters are added to. Must
+   * not be used by other threads until the pipeline is finished or
+   * cancelled.
+   * @param depth The number of submitted chapters which may wait to be
+   * written.
+   */
+  public ChapterPipeline(DocXWriter document, int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("Invalid pipeline depth " + depth);
+    }
+    this.document = document;
+    this.queue = new ArrayBlockingQueue<>(depth);
+    this.thread = new Thread(this::writeChapters, "docxdoclet-writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Submits a chapter to be written after the chapters submitted before.
+   * Waits while the queue is full.
+   *
+   * @param chapter The fragments of the chapter, created by
+   * {@link DocXWriter#createFragment()}. They are finished by the writing
+   * thread if they are not finished yet.
+   * @throws IOException If writing a chapter failed or the pipeline was
+   * cancelled.
+   */
+  public void submit(List<DocXWriter> chapter) throws IOException {
+    checkNotFailed();
+    if (isClosed) {
+      throw new IllegalStateException("pipeline has been closed");
+    }
+    if (!chapter.isEmpty()) {
+      put(chapter);
+    }
+  }
+
+  /**
+   * Waits until all chapters submitted are written.
+   *
+   * @throws IOException If writing a chapter failed.
+   */
+  public void finish() throws IOException {
+    if (isClosed) {
+      throw new IllegalStateException("pipeline has been closed");
+    }
+    isClosed = true;
+    put(END);
+    join();
+    checkNotFailed();
+  }
+
+  /**
+   * Drops the chapters not written yet and waits until the writing thread
+   * ended, e.g. after the builder failed. Does nothing after
+   * {@link #finish()}.
+   */
+  public void cancel() {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    isCancelled = true;
+    // only the builder puts, so the end fits into the emptied queue
+    queue.clear();
+    queue.offer(END);
+    join();
+  }
+
+  /**
+   * Gets the time the writing thread spent serializing and writing chapters.
+   *
+   * @return The time in nanoseconds.
+   */
+  public long getBusyNanos() {
+    return busyNanos;
+  }
+
+  private void writeChapters() {
+    while (true) {
+      List<DocXWriter> chapter;
+      try {
+        chapter = queue.take();
+      } catch (InterruptedException e) {
+        // keep taking, a waiting builder must not block forever
+        failure = e;
+        if (dropQueued()) {
+          return;
+        }
+        continue;
+      }
+      if (chapter == END) {
+        return;
+      }
+      if (failure != null || isCancelled) {
+        continue;
+      }
+      long start = System.nanoTime();
+      try {
+        for (DocXWriter fragment : chapter) {
+          if (isCancelled) {
+            break;
+          }
+          fragment.finishFragment();
+          document.addFragment(fragment);
+        }
+      } catch (RuntimeException | Error e) {
+        failure = e;
+      }
+      busyNanos += System.nanoTime() - start;
+      // unblock a waiting builder, it fails with the next chapter
+      if (failure != null && dropQueued()) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Drops the chapters waiting in the queue.
+   *
+   * @return true if the end was dropped as well.
+   */
+  private boolean dropQueued() {
+    List<DocXWriter> chapter;
+    while ((chapter = queue.poll()) != null) {
+      if (chapter == END) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void put(List<DocXWriter> chapter) throws IOException {
+    try {
+      queue.put(chapter);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the writing thread");
+    }
+  }
+
+  private void join() {
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void checkNotFailed() throws IOException {
+    Throwable e = failure;
+    if (e == null) {
+      return;
+    }
+    if (e instanceof UncheckedIOException) {
+      throw new IOException("Error writing chapter", e.getCause());
+    }
+    throw new IOException("Error writing chapter", e);
+  }
+}
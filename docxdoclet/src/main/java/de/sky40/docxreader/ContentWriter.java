@@ -0,0 +1,89 @@
+package de.sky40.docxreader;
+
+import de.sky40.docxreader.domain.BuiltInStyle;
+import de.sky40.docxreader.domain.Style;
+
+/**
+ * Receives the content of a document as paragraphs, runs and breaks. Runs are
+ * collected in the current (pending) paragraph until it is closed.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public interface ContentWriter {
+
+  /**
+   * Add a line break in the current paragraph.
+   */
+  void addLineBreak();
+
+  /**
+   * Adds a pagebreak to current paragraph.
+   */
+  void addPageBreak();
+
+  /**
+   * Add an unstyled paragraph with text to the document.
+   *
+   * @param text The text inside the paragraph.
+   */
+  void addParagraph(String text);
+
+  /**
+   * Closes the current paragraph if any exists.
+   */
+  void closeParagraph();
+
+  /**
+   * Add a paragraph with style to the document and inserts the text into the
+   * only run of the paragraph. (Closes the previous paragraph).
+   *
+   * @param style The style to use.
+   * @param text The text inside the paragraph.
+   */
+  void addStyledParagraph(Style style, String text);
+
+  /**
+   * Adds a run to the current (pending) paragraph.
+   *
+   * @param text text of paragraph
+   */
+  void addRun(String text);
+
+  /**
+   * Adds a styled run to the current (pending) paragraph.
+   *
+   * @param style the style
+   * @param text text of paragraph
+   */
+  void addStyledRun(Style style, String text);
+
+  /**
+   * Adds a styled run with a constant text, like a heading, to the current
+   * (pending) paragraph.
+   *
+   * @param style the style
+   * @param text the constant text of the run
+   */
+  void addStyledConstantRun(Style style, String text);
+
+  /**
+   * Adds a horizontal line.
+   */
+  void addHorizontalLine();
+
+  /**
+   * Gets a built-in style of the template.
+   *
+   * @param style The built-in style.
+   * @return The style, {@link Style#UNSTYLED} if the template has none.
+   */
+  Style findStyle(BuiltInStyle style);
+
+  /**
+   * Find style with name "name".
+   *
+   * @param name The name to find.
+   * @return The found style or null if not found.
+   */
+  Style findStyle(String name);
+}
@@ -0,0 +1,274 @@
+package de.sky40.docxreader;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipException;
+
+/**
+ * Writes an exploded package: a directory with a file per part, as if the
+ * docx file was unzipped. A part file is only rewritten if its content
+ * changed; the content is compared with the existing file while it is
+ * written, so an unchanged part is neither buffered nor written and keeps its
+ * modification time.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class DirectoryPackageWriter implements PackageWriter {
+
+  private final Path directory;
+
+  private int writtenParts = 0;
+  private int unchangedParts = 0;
+
+  /**
+   * The stream of the entry being written, null if no entry is open.
+   */
+  private ChangeAwareFileStream openStream;
+
+  /**
+   * Creates a writer.
+   *
+   * @param directory The directory of the package, created if it does not
+   * exist.
+   * @throws IOException If the directory can not be created.
+   */
+  public DirectoryPackageWriter(Path directory) throws IOException {
+    this.directory = Files.createDirectories(directory).toAbsolutePath().normalize();
+  }
+
+  /**
+   * Copies a part of a template, inflating it.
+   */
+  @Override
+  public void copyEntry(TemplateArchive archive, TemplateArchive.Entry entry) throws IOException {
+    try (InputStream in = archive.openEntry(entry); OutputStream part = openEntry(entry.getName())) {
+      byte[] buffer = new byte[64 * 1024];
+      int n;
+      while (0 < (n = in.read(buffer))) {
+        part.write(buffer, 0, n);
+      }
+    }
+  }
+
+  @Override
+  public OutputStream openEntry(String name) throws IOException {
+    if (openStream != null) {
+      throw new IllegalStateException("previous entry has not been closed");
+    }
+    Path file = directory.resolve(name).normalize();
+    if (!file.startsWith(directory) || file.equals(directory)) {
+      throw new ZipException("invalid part name " + name);
+    }
+    Files.createDirectories(file.getParent());
+    openStream = new ChangeAwareFileStream(file);
+    return openStream;
+  }
+
+  @Override
+  public long getCompressionNanos() {
+    return 0;
+  }
+
+  /**
+   * Closes the writer. Every part file is complete when its stream is closed,
+   * a part still open is abandoned and its file left as it was.
+   */
+  @Override
+  public void close() {
+    if (openStream != null) {
+      openStream.abandon();
+    }
+  }
+
+  /**
+   * Gets the number of part files written because they changed.
+   *
+   * @return The number of part files written.
+   */
+  public int getWrittenParts() {
+    return writtenParts;
+  }
+
+  /**
+   * Gets the number of part files kept because they did not change.
+   *
+   * @return The number of part files kept.
+   */
+  public int getUnchangedParts() {
+    return unchangedParts;
+  }
+
+  /**
+   * Compares the content with the existing file while it is written. At the
+   * first difference the content matched so far is copied from the existing
+   * file into a temporary file, which replaces the existing file on close.
+   */
+  private final class ChangeAwareFileStream extends OutputStream {
+
+    private final Path file;
+
+    /**
+     * The existing file, null if it does not exist or once the content
+     * differs.
+     */
+    private InputStream existing;
+
+    /**
+     * The number of bytes which are equal to the existing file.
+     */
+    private long matched = 0;
+
+    private Path temporaryFile;
+
+    /**
+     * The stream of the temporary file, null as long as the content matches.
+     */
+    private OutputStream changed;
+
+    private byte[] compareBuffer = new byte[0];
+    private boolean isClosed = false;
+
+    ChangeAwareFileStream(Path file) throws IOException {
+      this.file = file;
+      if (Files.isRegularFile(file)) {
+        this.existing = Files.newInputStream(file);
+      } else {
+        startChanged();
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (isClosed) {
+        throw new IOException("entry stream closed");
+      }
+      if (changed == null) {
+        int equal = compare(b, off, len);
+        matched += equal;
+        if (equal == len) {
+          return;
+        }
+        startChanged();
+        off += equal;
+        len -= equal;
+      }
+      changed.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+      openStream = null;
+      try {
+        if (changed == null && existing.read() < 0) {
+          existing.close();
+          unchangedParts++;
+          return;
+        }
+        if (changed == null) {
+          // the existing file is longer
+          startChanged();
+        }
+        changed.close();
+        try {
+          Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        writtenParts++;
+      } finally {
+        if (existing != null) {
+          existing.close();
+        }
+        if (temporaryFile != null) {
+          Files.deleteIfExists(temporaryFile);
+        }
+      }
+    }
+
+    /**
+     * Closes the files without replacing the existing file.
+     */
+    void abandon() {
+      isClosed = true;
+      openStream = null;
+      try {
+        if (existing != null) {
+          existing.close();
+        }
+        if (changed != null) {
+          changed.close();
+        }
+        if (temporaryFile != null) {
+          Files.deleteIfExists(temporaryFile);
+        }
+      } catch (IOException e) {
+        Log.debug(() -> "Abandoning " + file + " failed: " + e);
+      }
+    }
+
+    /**
+     * Compares bytes with the next bytes of the existing file.
+     *
+     * @return The number of equal bytes.
+     */
+    private int compare(byte[] b, int off, int len) throws IOException {
+      if (compareBuffer.length < len) {
+        compareBuffer = new byte[Math.max(len, 8 * 1024)];
+      }
+      int read = 0;
+      while (read < len) {
+        int n = existing.read(compareBuffer, read, len - read);
+        if (n < 0) {
+          break;
+        }
+        read += n;
+      }
+      for (int i = 0; i < read; i++) {
+        if (compareBuffer[i] != b[off + i]) {
+          return i;
+        }
+      }
+      return read;
+    }
+
+    /**
+     * Switches to writing a temporary file, starting with the content which
+     * matched the existing file.
+     */
+    private void startChanged() throws IOException {
+      if (existing != null) {
+        existing.close();
+        existing = null;
+      }
+      temporaryFile = file.resolveSibling(file.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+      FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      if (0 < matched) {
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+          long position = 0;
+          while (position < matched) {
+            position += source.transferTo(position, matched - position, channel);
+          }
+        }
+      }
+      changed = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package de.sky40.docxreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A sink writing an exploded package to a directory, a file per part. Only
+ * the part files whose content changed are rewritten; with reproducible
+ * output a build tool or version control sees exactly the parts which
+ * changed. Part files of earlier runs which are no longer in the package are
+ * not deleted.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class DirectorySink extends PackageSink {
+
+  private final File directory;
+
+  /**
+   * The writer of the last package, null until a package is written.
+   */
+  private DirectoryPackageWriter writer;
+
+  DirectorySink(File directory) {
+    this.directory = directory;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  @Override
+  public String getName() {
+    return directory.getPath();
+  }
+
+  @Override
+  PackageWriter openPackage(TemplateArchive template, PackageFormat format, ZipCompression compression,
+          boolean reproducible) throws IOException {
+    if (format != PackageFormat.DIRECTORY) {
+      throw new IOException("The format " + format + " can not be written to a directory");
+    }
+    writer = new DirectoryPackageWriter(directory.toPath());
+    return writer;
+  }
+
+  /**
+   * Not supported, a directory is written part by part.
+   */
+  @Override
+  WritableByteChannel open(boolean reproducible) throws IOException {
+    throw new IOException("Packages saved by docx4j can not be written to a directory");
+  }
+
+  @Override
+  void commit() {
+    // every part file is complete when it is written
+  }
+
+  @Override
+  void discard() {
+    // the part files written are kept, a new run rewrites what changed
+  }
+
+  /**
+   * Indicates if a part file was rewritten.
+   *
+   * @return false if all part files kept their previous content.
+   */
+  @Override
+  public boolean isChanged() {
+    return writer == null || 0 < writer.getWrittenParts();
+  }
+
+  /**
+   * Gets a summary of the part files written and kept.
+   *
+   * @return The summary.
+   */
+  public String getReport() {
+    if (writer == null) {
+      return "No part files written.";
+    }
+    return "Wrote " + writer.getWrittenParts() + " changed part file(s), kept "
+            + writer.getUnchangedParts() + " unchanged.";
+  }
+}
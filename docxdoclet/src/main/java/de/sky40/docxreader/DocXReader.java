@@ -1,20 +1,22 @@
 package de.sky40.docxreader;
 
+import de.sky40.docxreader.domain.BuiltInStyle;
 import de.sky40.docxreader.domain.Style;
 import de.sky40.docxreader.domain.StyleName;
 import de.sky40.docxreader.domain.DocXReaderResult;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.docx4j.Docx4J;
+import org.docx4j.TraversalUtil;
 import org.docx4j.openpackaging.exceptions.Docx4JException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
-import org.docx4j.openpackaging.parts.Part;
-import org.docx4j.openpackaging.parts.PartName;
 import org.docx4j.openpackaging.parts.Parts;
 import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
-import org.docx4j.wml.Document;
 import org.docx4j.wml.P;
 import org.docx4j.wml.PPr;
 import org.docx4j.wml.PPrBase;
@@ -29,43 +31,68 @@ import org.docx4j.wml.RPr;
 public class DocXReader {
 
   /**
-   * Extracts the styles from the main document by searching for keywords.
+   * The cache for the extracted styles, may be null.
+   */
+  private final TemplateCache templateCache;
+
+  /**
+   * Creates a reader without template cache.
+   */
+  public DocXReader() {
+    this(null);
+  }
+
+  /**
+   * Creates a reader which looks up and stores extracted styles in a cache.
+   *
+   * @param templateCache The cache to use or null for no caching.
+   */
+  public DocXReader(TemplateCache templateCache) {
+    this.templateCache = templateCache;
+  }
+
+  /**
+   * Extracts the styles from the template by searching for keywords. The
+   * template is traversed only once: body, tables, text boxes, headers and
+   * footers are visited and every keyword paragraph found on the way is put
+   * into the resulting index.
    *
-   * @param mainDoc
-   * @return
-   * @throws Docx4JException
+   * @param processingPackage The template package.
+   * @return The keyword index with an entry for every keyword found.
    */
-  private Map<StyleName, Style> extractStyles(MainDocumentPart mainDoc) throws Docx4JException {
+  private Map<StyleName, Style> extractStyles(WordprocessingMLPackage processingPackage) {
+    StyleIndexer indexer = new StyleIndexer();
+    TraversalUtil.visit(processingPackage, false, indexer);
+
     Map<StyleName, Style> styleMap = new HashMap<>();
-    styleMap.put(StyleName.with(StyleName.PACKAGE), findStyleByText(StyleName.PACKAGE, mainDoc));
-    styleMap.put(StyleName.with(StyleName.CLASS), findStyleByText(StyleName.CLASS, mainDoc));
-    styleMap.put(StyleName.with(StyleName.METHOD), findStyleByText(StyleName.METHOD, mainDoc));
-    styleMap.put(StyleName.with(StyleName.SIGNATURE), findStyleByText(StyleName.SIGNATURE, mainDoc));
-    styleMap.put(StyleName.with(StyleName.COMMENT), findStyleByText(StyleName.COMMENT, mainDoc));
-    styleMap.put(StyleName.with(StyleName.HEADING), findStyleByText(StyleName.HEADING, mainDoc));
-    styleMap.put(StyleName.with(StyleName.MISSING), findStyleByText(StyleName.MISSING, mainDoc));
+    for (Map.Entry<String, Style> entry : indexer.getStyles().entrySet()) {
+      styleMap.put(StyleName.with(entry.getKey()), entry.getValue());
+    }
     return styleMap;
   }
 
   /**
-   * Find the style in a document.
+   * Find the style of a paragraph. Takes the paragraph style if any or the
+   * properties of the first styled run otherwise.
    *
-   * @param findText
-   * @param doc
-   * @return
-   * @throws Docx4JException
+   * @param paragraph The paragraph to check.
+   * @return The style of the paragraph or null if the paragraph has no style.
    */
-  private Style findStyleByText(String findText, MainDocumentPart doc) throws Docx4JException {
-    Document document = doc.getContents();
-    log(document);
-    List<Object> contents = document.getContent();
-    for (Object content : contents) {
-      // log(content.getClass().getCanonicalName());
-      if (content instanceof org.docx4j.wml.P) {
-        P paragraph = (org.docx4j.wml.P) content;
-        Style style = findParagraphStyleByText(findText, paragraph);
-        if (style != null) {
-          return style;
+  private Style findParagraphStyle(P paragraph) {
+    PPr paragraphProps = paragraph.getPPr();
+    PPrBase.PStyle pStyle = paragraphProps != null ? paragraphProps.getPStyle() : null;
+    if (pStyle != null) {
+      return new Style(pStyle.getVal());
+    } else {
+      // no styleId found, searching for run properties instead
+      List<Object> contents = paragraph.getContent();
+      for (Object content : contents) {
+        if (content instanceof org.docx4j.wml.R) {
+          R run = (org.docx4j.wml.R) content;
+          if (run.getRPr() != null) {
+            RPr runProps = run.getRPr();
+            return new Style(runProps);
+          }
         }
       }
     }
@@ -73,62 +100,69 @@ public class DocXReader {
   }
 
   /**
-   * Find the style in a paragraph.
+   * Checks if a paragraph text can be a keyword. A keyword paragraph contains
+   * only a single word, e.g. "classtemplate".
    *
-   * @param findText
-   * @param paragraph
-   * @return
+   * @param text The text of the paragraph.
+   * @return true, if the text is a single word.
    */
-  private Style findParagraphStyleByText(String findText, P paragraph) {
-    String paragraphText = paragraph.toString();
-
-    if (paragraphText.toLowerCase().equals(findText)) {
-      log("text '" + paragraphText + "' matches template name");
-
-      PPr paragraphProps = paragraph.getPPr();
-      PPrBase.PStyle pStyle = paragraphProps.getPStyle();
-      if (pStyle != null) {
-        String styleId = pStyle.getVal();
-        log("paragraph styleId:" + styleId);
-        return new Style(styleId);
-      } else {
-        log("No styleId found. Searching for run properties instead.");
-        List<Object> contents = paragraph.getContent();
-        for (Object content : contents) {
-          if (content instanceof org.docx4j.wml.R) {
-            R run = (org.docx4j.wml.R) content;
-            log("run found:" + run);
-            if (run.getRPr() != null) {
-              log("run has style properties:" + run.getRPr());
-              RPr runProps = run.getRPr();
-              return new Style(runProps);
-            }
-          }
-        }
+  private static boolean isKeyword(String text) {
+    if (text.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (Character.isWhitespace(text.charAt(i))) {
+        return false;
       }
     }
-    return null;
+    return true;
   }
 
   /**
-   * Writes the object to the log.
-   *
-   * @param obj The object to write.
+   * Collects the styles of all keyword paragraphs in one traversal. The first
+   * styled paragraph of a keyword wins.
    */
-  private void log(Object obj) {
-    System.out.println(obj);
+  private class StyleIndexer extends TraversalUtil.CallbackImpl {
+
+    private final Map<String, Style> styles = new HashMap<>();
+
+    @Override
+    public List<Object> apply(Object o) {
+      if (o instanceof P) {
+        P paragraph = (P) o;
+        String paragraphText = paragraph.toString();
+        if (isKeyword(paragraphText)) {
+          String keyword = paragraphText.toLowerCase();
+          if (!styles.containsKey(keyword)) {
+            Style style = findParagraphStyle(paragraph);
+            if (style != null) {
+              Log.debug(() -> "text '" + paragraphText + "' indexed as template name");
+              styles.put(keyword, style);
+            }
+          }
+        }
+      }
+      return null;
+    }
+
+    public Map<String, Style> getStyles() {
+      return styles;
+    }
   }
 
   /**
-   * Logs the content of a map.
+   * Describes the content of a map, one line per key and value.
    *
-   * @param map The map to log.
+   * @param map The map.
+   * @return The description.
    */
-  private void logMap(Map<?, ?> map) {
-    for (Object entry : map.keySet()) {
-      log(entry);
-      log(map.get(entry));
+  private static String describeMap(Map<?, ?> map) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<?, ?> entry : map.entrySet()) {
+      sb.append(System.lineSeparator()).append(entry.getKey());
+      sb.append(System.lineSeparator()).append(entry.getValue());
     }
+    return sb.toString();
   }
 
   /**
@@ -140,22 +174,40 @@ public class DocXReader {
    * @throws Docx4JException If an exception occured during file processing.
    */
   public DocXReaderResult read(File file) throws Docx4JException {
-    log("Reading docx file.");
-    WordprocessingMLPackage processingPackage = Docx4J.load(file);
+    Log.info("Reading docx file.");
+    byte[] content;
+    try {
+      content = Files.readAllBytes(file.toPath());
+    } catch (IOException e) {
+      throw new Docx4JException("Couldn't read " + file.getPath(), e);
+    }
+    WordprocessingMLPackage processingPackage = Docx4J.load(new ByteArrayInputStream(content));
     Parts parts = processingPackage.getParts();
     String contentType = processingPackage.getContentType();
-    log("content type: " + contentType);
+    Log.debug(() -> "content type: " + contentType);
     MainDocumentPart mainDoc = processingPackage.getMainDocumentPart();
 
-    Map<StyleName, Style> styleMap = extractStyles(mainDoc);
+    Map<StyleName, Style> styleMap = null;
+    String templateKey = TemplateCache.keyOf(content);
+    if (templateCache != null) {
+      styleMap = templateCache.load(templateKey);
+    }
+    if (styleMap == null) {
+      styleMap = extractStyles(processingPackage);
+      if (templateCache != null) {
+        templateCache.store(templateKey, styleMap);
+      }
+    } else {
+      Log.debug("styles taken from template cache");
+    }
 
-    log("----------------");
-    log("parts found:");
-    HashMap<PartName, Part> partsMap = parts.getParts();
-    logMap(partsMap);
-    log("----------------");
+    Log.debug(() -> "parts found:" + describeMap(parts.getParts()));
 
-    return new DocXReaderResult(processingPackage, mainDoc, styleMap);
+    DocXReaderResult result = new DocXReaderResult(processingPackage, mainDoc, styleMap, file, templateKey);
+    for (BuiltInStyle style : result.getUnresolvedStyles()) {
+      Log.warn(() -> "No paragraph with keyword '" + style.getKeyword() + "' found in template, its content is written unstyled.");
+    }
+    return result;
   }
 
 }
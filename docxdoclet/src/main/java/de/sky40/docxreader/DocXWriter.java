@@ -1,25 +1,36 @@
 package de.sky40.docxreader;
 
+import de.sky40.docxreader.domain.BuiltInStyle;
 import de.sky40.docxreader.domain.Style;
 import de.sky40.docxreader.domain.StyleName;
 import de.sky40.docxreader.domain.DocXReaderResult;
+import de.sky40.docxreader.StreamingDocumentWriter.XmlFragment;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.bind.JAXBException;
+import org.docx4j.Docx4J;
 import org.docx4j.jaxb.Context;
 import org.docx4j.openpackaging.exceptions.Docx4JException;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
+import org.docx4j.openpackaging.parts.PartName;
 import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
-import org.docx4j.wml.Br;
-import org.docx4j.wml.CTBorder;
 import org.docx4j.wml.ObjectFactory;
 import org.docx4j.wml.P;
-import org.docx4j.wml.PPr;
-import org.docx4j.wml.PPrBase;
 import org.docx4j.wml.R;
 import org.docx4j.wml.RPr;
-import org.docx4j.wml.STBrType;
 import org.docx4j.wml.Text;
 
 /**
@@ -27,7 +38,7 @@ import org.docx4j.wml.Text;
  *
  * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
  */
-public class DocXWriter {
+public class DocXWriter implements ContentWriter {
 
   /**
    * The WML object creating factory.
@@ -35,9 +46,14 @@ public class DocXWriter {
   private final ObjectFactory factory;
 
   /**
-   * The name of the file to write to.
+   * The shared paragraph properties and breaks.
    */
-  private final String fileName;
+  private final PropertyRegistry properties;
+
+  /**
+   * The sink to write the package to.
+   */
+  private final PackageSink sink;
 
   /**
    * The main document part to process.
@@ -59,6 +75,90 @@ public class DocXWriter {
    */
   private final WordprocessingMLPackage packageML;
 
+  /**
+   * The writer of the package in streaming mode, null in memory mode.
+   */
+  private StreamingDocumentWriter streamWriter;
+
+  /**
+   * The serialized constant runs by style and text (streaming mode only).
+   */
+  private final Map<Style, Map<String, XmlFragment>> constantRuns;
+
+  /**
+   * The blocks of a fragment, null if this writer writes the document itself.
+   */
+  private final List<Object> fragmentBlocks;
+
+  /**
+   * The runs added to a fragment before its first paragraph was closed, null
+   * as long as no paragraph was closed. These runs continue the pending
+   * paragraph of the document the fragment is added to.
+   */
+  private List<Object> leadingRuns;
+
+  /**
+   * The blocks of a finished fragment serialized in streaming mode.
+   */
+  private XmlFragment serializedBlocks;
+
+  /**
+   * The text of the run which is still open for adjacent runs of the same
+   * style, null if there is no open run.
+   */
+  private StringBuilder openRunText;
+
+  /**
+   * The effective style (run properties) of the open run.
+   */
+  private RPr openRunProperties;
+
+  /**
+   * The style of the open run if it consists of a single constant run, else
+   * null.
+   */
+  private Style openConstantRunStyle;
+
+  /**
+   * The first run of a fragment, if it was closed before any other content.
+   * It is kept as text, as it may continue the open run of the document.
+   */
+  private StringBuilder firstRunText;
+  private RPr firstRunProperties;
+  private Style firstConstantRunStyle;
+
+  /**
+   * The number of runs merged into a preceding run.
+   */
+  private int mergedRuns = 0;
+
+  /**
+   * The number of characters of text added, including the text of added
+   * fragments.
+   */
+  private long textLength = 0;
+
+  /**
+   * The compression of the main document.
+   */
+  private ZipCompression compression = ZipCompression.DEFAULT;
+
+  /**
+   * The format of the package.
+   */
+  private PackageFormat format = PackageFormat.DOCX;
+
+  /**
+   * The time spent compressing the main document, known after writing.
+   */
+  private long compressionNanos = 0;
+
+  /**
+   * Write the same bytes for the same content and keep an unchanged output
+   * file.
+   */
+  private boolean reproducible = false;
+
   /**
    * Create a new writer with styles in the ReaderResult.
    *
@@ -67,29 +167,212 @@ public class DocXWriter {
    * @param fileName The file name of teh file to write to.
    */
   public DocXWriter(DocXReaderResult readerResult, String fileName) {
+    this(readerResult, PackageSink.toFile(new File(fileName)));
+  }
+
+  /**
+   * Create a new writer with styles in the ReaderResult, writing to a sink
+   * like a stream or an in-memory buffer.
+   *
+   * @param readerResult The result of the template reading process (styles
+   * mainly).
+   * @param sink The sink to write the package to.
+   */
+  public DocXWriter(DocXReaderResult readerResult, PackageSink sink) {
     this.factory = Context.getWmlObjectFactory();
+    this.properties = new PropertyRegistry(factory, readerResult.getStyles().values());
     this.reader = readerResult;
     this.mainDoc = readerResult.getMainDoc();
     this.packageML = readerResult.getPackageML();
 
-    this.fileName = fileName;
+    this.sink = sink;
+    this.constantRuns = new HashMap<>();
+    this.fragmentBlocks = null;
+  }
+
+  /**
+   * Creates a writer for a fragment of the document of another writer.
+   *
+   * @param document The writer of the document.
+   */
+  private DocXWriter(DocXWriter document) {
+    this.factory = document.factory;
+    this.properties = document.properties;
+    this.reader = document.reader;
+    this.mainDoc = document.mainDoc;
+    this.packageML = document.packageML;
+    this.sink = document.sink;
+    this.streamWriter = document.streamWriter;
+    this.constantRuns = document.constantRuns;
+    this.fragmentBlocks = new ArrayList<>();
+  }
+
+  /**
+   * Creates a writer for a fragment of this document, e.g. a class page. The
+   * fragment can be written on another thread and is added to this document
+   * by {@link #addFragment(de.sky40.docxreader.DocXWriter)}.
+   *
+   * @return The fragment writer.
+   */
+  public DocXWriter createFragment() {
+    return new DocXWriter(this);
+  }
+
+  /**
+   * Creates a finished fragment from the content of a fragment taken from a
+   * {@link FragmentCache}.
+   *
+   * @param cacheEntry The content as returned by {@link #toCacheEntry()}.
+   * @return The fragment writer.
+   * @throws IOException If the content is invalid.
+   */
+  public DocXWriter createFragment(byte[] cacheEntry) throws IOException {
+    DocXWriter fragment = new DocXWriter(this);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(cacheEntry));
+    fragment.mergedRuns = in.readInt();
+    fragment.textLength = in.readLong();
+    int breaks = in.readInt();
+    fragment.leadingRuns = new ArrayList<>(breaks);
+    for (int i = 0; i < breaks; i++) {
+      fragment.leadingRuns.add(in.readBoolean() ? properties.getPageBreak() : properties.getLineBreak());
+    }
+    byte[] blocks = new byte[in.readInt()];
+    in.readFully(blocks);
+    if (0 < blocks.length) {
+      fragment.serializedBlocks = new XmlFragment(blocks);
+    }
+    return fragment;
+  }
+
+  /**
+   * Gets the content of a finished fragment for a {@link FragmentCache}. Only
+   * fragments in streaming mode, which consist of breaks continuing the
+   * pending paragraph of the document followed by complete paragraphs, can
+   * be cached. Class pages are such fragments.
+   *
+   * @return The content or null if the fragment can not be cached.
+   */
+  public byte[] toCacheEntry() {
+    if (streamWriter == null || fragmentBlocks == null || !fragmentBlocks.isEmpty() || leadingRuns == null
+            || firstRunText != null || !pendingRuns.isEmpty() || openRunText != null) {
+      return null;
+    }
+    for (Object run : leadingRuns) {
+      if (run != properties.getLineBreak() && run != properties.getPageBreak()) {
+        return null;
+      }
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(mergedRuns);
+      out.writeLong(textLength);
+      out.writeInt(leadingRuns.size());
+      for (Object run : leadingRuns) {
+        out.writeBoolean(run == properties.getPageBreak());
+      }
+      byte[] blocks = serializedBlocks != null ? serializedBlocks.getBytes() : new byte[0];
+      out.writeInt(blocks.length);
+      out.write(blocks);
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Finishes a fragment after all content was added. In streaming mode the
+   * blocks of the fragment are serialized, so this should be called on the
+   * thread which created the content.
+   */
+  public void finishFragment() {
+    if (streamWriter != null && !fragmentBlocks.isEmpty()) {
+      try {
+        serializedBlocks = streamWriter.serializeBlocks(fragmentBlocks);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      fragmentBlocks.clear();
+    }
+  }
+
+  /**
+   * Adds the content of a fragment as if it had been added to this writer
+   * directly.
+   *
+   * @param fragment The fragment created by {@link #createFragment()}.
+   */
+  public void addFragment(DocXWriter fragment) {
+    mergedRuns += fragment.mergedRuns;
+    textLength += fragment.textLength;
+    if (fragment.firstRunText != null) {
+      addRunText(fragment.firstRunProperties, fragment.firstRunText, fragment.firstConstantRunStyle);
+    }
+    if (fragment.leadingRuns != null) {
+      addPendingRuns(fragment.leadingRuns);
+      flushRunQueue();
+      if (fragment.serializedBlocks != null) {
+        try {
+          streamWriter.writeFragment(fragment.serializedBlocks);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      for (Object block : fragment.fragmentBlocks) {
+        addBlock(block);
+      }
+    }
+    addPendingRuns(fragment.pendingRuns);
+    if (fragment.openRunText != null) {
+      addRunText(fragment.openRunProperties, fragment.openRunText, fragment.openConstantRunStyle);
+    }
+  }
+
+  private void addPendingRuns(List<Object> runs) {
+    for (Object run : runs) {
+      addPending(run);
+    }
+  }
+
+  /**
+   * Switches to streaming mode. The parts of the template are written to the
+   * sink at once and every paragraph is written as soon as it is
+   * complete, so the document is never held in memory as a whole. Must be
+   * called before any content is added; {@link #write()} completes the package.
+   *
+   * @throws Docx4JException If the sink can not be written or the
+   * reader result has no template file.
+   */
+  public void startStreaming() throws Docx4JException {
+    File templateFile = reader.getTemplateFile();
+    if (templateFile == null) {
+      throw new Docx4JException("Streaming requires a template file.");
+    }
+    packageML.setName(sink.getName());
+    try (TemplateArchive template = TemplateArchive.open(templateFile)) {
+      if (!containsAllParts(template)) {
+        throw new Docx4JException("Streaming requires a package with the parts of the template only.");
+      }
+      streamWriter = StreamingDocumentWriter.open(template, mainDoc, sink, format, compression, reproducible);
+    } catch (IOException e) {
+      throw new Docx4JException("Error writing " + sink.getName(), e);
+    }
   }
 
   /**
    * Add a line break in the current paragraph.
    */
+  @Override
   public void addLineBreak() {
-    Br linebreak = factory.createBr();
-    pendingRuns.add(linebreak);
+    addPending(properties.getLineBreak());
   }
 
   /**
    * Adds a pagebreak to current paragraph.
    */
+  @Override
   public void addPageBreak() {
-    Br pageBreak = factory.createBr();
-    pageBreak.setType(STBrType.PAGE);
-    pendingRuns.add(pageBreak);
+    addPending(properties.getPageBreak());
   }
 
   /**
@@ -97,6 +380,7 @@ public class DocXWriter {
    *
    * @param text The text inside the paragraph.
    */
+  @Override
   public void addParagraph(String text) {
     addStyledParagraph(null, text);
   }
@@ -104,6 +388,7 @@ public class DocXWriter {
   /**
    * Closes the current paragraph if any exists.
    */
+  @Override
   public void closeParagraph() {
     flushRunQueue();
   }
@@ -115,9 +400,11 @@ public class DocXWriter {
    * @param style The style to use.
    * @param text The text inside the paragraph.
    */
+  @Override
   public void addStyledParagraph(Style style, String text) {
+    textLength += text.length();
     flushRunQueue();
-    mainDoc.getContent().add(createStyledParagraph(style, text));
+    addBlock(createStyledParagraph(style, text));
   }
 
   /**
@@ -125,18 +412,212 @@ public class DocXWriter {
    *
    * @param text text of paragraph
    */
+  @Override
   public void addRun(String text) {
-    pendingRuns.add(createStyledRun(null, text));
+    addStyledRun(null, text);
   }
 
   /**
-   * Adds a styled run to the current (pending) paragraph.
+   * Adds a styled run to the current (pending) paragraph. The text is merged
+   * into the previous run if it has the same effective style.
    *
    * @param style the style
    * @param text text of paragraph
    */
+  @Override
   public void addStyledRun(Style style, String text) {
-    pendingRuns.add(createStyledRun(style, text));
+    textLength += text.length();
+    addRunText(runPropertiesOf(style), text, null);
+  }
+
+  /**
+   * Adds a styled run with a constant text, like a heading, to the current
+   * (pending) paragraph. In streaming mode the run is serialized only once per
+   * style and text.
+   *
+   * @param style the style
+   * @param text the constant text of the run
+   */
+  @Override
+  public void addStyledConstantRun(Style style, String text) {
+    textLength += text.length();
+    addRunText(runPropertiesOf(style), text, style);
+  }
+
+  /**
+   * Gets the number of runs which have been merged into a preceding run of the
+   * same style.
+   *
+   * @return The number of merged runs.
+   */
+  public int getMergedRuns() {
+    return mergedRuns;
+  }
+
+  /**
+   * Sets the compression of the main document. The parts of the template are
+   * copied as they are compressed in the template. Packages saved by docx4j,
+   * because parts were added, are compressed by docx4j. Must be set before
+   * streaming starts.
+   *
+   * @param compression The compression.
+   */
+  public void setCompression(ZipCompression compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * Sets the format of the package. A {@link PackageFormat#DIRECTORY} needs a
+   * sink of {@link PackageSink#toDirectory(java.io.File)}. Must be set before
+   * streaming starts.
+   *
+   * @param format The format.
+   */
+  public void setFormat(PackageFormat format) {
+    this.format = format;
+  }
+
+  /**
+   * Sets the reproducible mode: the same content is written to the same
+   * bytes, as the parts are sorted by name, all entries have a fixed time and
+   * the namespace declarations are sorted. The content is hashed while it is
+   * written and an output file with the same content is left untouched. Must
+   * be set before streaming starts. Packages saved by docx4j, because parts
+   * were added, are not reproducible.
+   *
+   * @param reproducible true for reproducible output.
+   */
+  public void setReproducible(boolean reproducible) {
+    this.reproducible = reproducible;
+  }
+
+  /**
+   * Indicates if the output file was written, after {@link #write()}.
+   *
+   * @return false if the output file had the same content already and was
+   * left untouched (reproducible mode only).
+   */
+  public boolean isOutputChanged() {
+    return sink.isChanged();
+  }
+
+  /**
+   * Gets the hash of the package written, after {@link #write()}.
+   *
+   * @return The SHA-256 hash as hex string, null if not in reproducible
+   * mode.
+   */
+  public String getContentHash() {
+    return sink.getContentHash();
+  }
+
+  /**
+   * Gets the time spent compressing the main document.
+   *
+   * @return The time in nanoseconds summed over all deflating threads, 0 as
+   * long as the document is not written.
+   */
+  public long getCompressionNanos() {
+    return compressionNanos;
+  }
+
+  /**
+   * Gets the number of characters of text added to the document or fragment.
+   *
+   * @return The number of characters.
+   */
+  public long getTextLength() {
+    return textLength;
+  }
+
+  /**
+   * Adds text to the open run or opens a new run if the open run has another
+   * style.
+   *
+   * @param runProperties The effective style of the text.
+   * @param text The text.
+   * @param constantRunStyle The style if the text is a constant run, else
+   * null.
+   */
+  private void addRunText(RPr runProperties, CharSequence text, Style constantRunStyle) {
+    if (openRunText != null && openRunProperties == runProperties) {
+      openRunText.append(text);
+      openConstantRunStyle = null;
+      mergedRuns++;
+      return;
+    }
+    closeRun();
+    openRunText = new StringBuilder(text);
+    openRunProperties = runProperties;
+    openConstantRunStyle = constantRunStyle;
+  }
+
+  /**
+   * Adds an object (e.g. a break) to the current paragraph after the open run.
+   *
+   * @param run The object to add.
+   */
+  private void addPending(Object run) {
+    closeRun();
+    pendingRuns.add(run);
+  }
+
+  /**
+   * Adds the open run to the pending runs. In streaming mode a constant run is
+   * serialized only once per style and text.
+   */
+  private void closeRun() {
+    if (openRunText == null) {
+      return;
+    }
+    if (fragmentBlocks != null && leadingRuns == null && pendingRuns.isEmpty() && firstRunText == null) {
+      firstRunText = openRunText;
+      firstRunProperties = openRunProperties;
+      firstConstantRunStyle = openConstantRunStyle;
+      openRunText = null;
+      return;
+    }
+    String text = openRunText.toString();
+    if (streamWriter != null && openConstantRunStyle != null) {
+      pendingRuns.add(getConstantRun(openConstantRunStyle, text));
+    } else {
+      pendingRuns.add(createRun(openRunProperties, text));
+    }
+    openRunText = null;
+    openRunProperties = null;
+    openConstantRunStyle = null;
+  }
+
+  /**
+   * Gets the serialized run of a constant text (streaming mode only).
+   *
+   * @param style the style
+   * @param text the constant text of the run
+   * @return The serialized run.
+   */
+  private XmlFragment getConstantRun(Style style, String text) {
+    // the cache is shared with the fragments of the document
+    synchronized (constantRuns) {
+      Map<String, XmlFragment> runs = constantRuns.get(style);
+      if (runs == null) {
+        runs = new HashMap<>();
+        constantRuns.put(style, runs);
+      }
+      XmlFragment run = runs.get(text);
+      if (run == null) {
+        try {
+          run = streamWriter.serialize(createStyledRun(style, text));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        runs.put(text, run);
+      }
+      return run;
+    }
+  }
+
+  private static RPr runPropertiesOf(Style style) {
+    return style == null ? null : style.getRunStyle();
   }
 
   /**
@@ -147,18 +628,26 @@ public class DocXWriter {
    * @return the created run element.
    */
   public R createStyledRun(Style style, String text) {
+    return createRun(runPropertiesOf(style), text);
+  }
+
+  private R createRun(RPr runStyle, String text) {
     R newRun = factory.createR();
     Text newText = factory.createText();
     newText.setValue(text);
     newText.setSpace("preserve");
     newRun.getContent().add(newText);
-    if (style != null) {
-      RPr runStyle = style.getRunStyle();
+    if (runStyle != null) {
       newRun.setRPr(runStyle);
     }
     return newRun;
   }
 
+  @Override
+  public Style findStyle(BuiltInStyle style) {
+    return reader.findStyle(style);
+  }
+
   /**
    * Find style with name "name".
    *
@@ -175,6 +664,7 @@ public class DocXWriter {
    * @param name The name to find.
    * @return The found style or null if not found.
    */
+  @Override
   public Style findStyle(String name) {
     return reader.findStyle(name);
   }
@@ -183,22 +673,128 @@ public class DocXWriter {
    * Flushes the queue of pending runs to be written to the current open paragraph.
    */
   private void flushRunQueue() {
+    closeRun();
+    if (fragmentBlocks != null && leadingRuns == null) {
+      // the first paragraph of a fragment is completed when it is added
+      leadingRuns = new ArrayList<>(pendingRuns);
+      pendingRuns.clear();
+      return;
+    }
     if (!pendingRuns.isEmpty()) {
       P paragraph = createStyledParagraph(null, pendingRuns);
-      mainDoc.getContent().add(paragraph);
+      addBlock(paragraph);
       pendingRuns.clear();
     }
   }
 
   /**
-   * Writes the docx file to disk.
+   * Writes the docx package to the sink or completes it in streaming mode. Parts of
+   * the template are copied as they are and only the main document is
+   * marshalled. If the package contains parts which are not in the template
+   * the whole package is saved by docx4j.
    *
    * @throws Docx4JException
    */
   public void write() throws Docx4JException {
-    File exportFile = new File(fileName);
-    packageML.setName(fileName);
-    packageML.save(exportFile);
+    if (streamWriter != null) {
+      flushRunQueue();
+      try {
+        streamWriter.close();
+      } catch (IOException e) {
+        throw new Docx4JException("Error writing " + sink.getName(), e);
+      } finally {
+        compressionNanos = streamWriter.getCompressionNanos();
+        streamWriter = null;
+      }
+      return;
+    }
+    packageML.setName(sink.getName());
+    File templateFile = reader.getTemplateFile();
+    if (templateFile == null) {
+      saveWithDocx4j();
+      return;
+    }
+    try (TemplateArchive template = TemplateArchive.open(templateFile)) {
+      if (!containsAllParts(template)) {
+        saveWithDocx4j();
+        return;
+      }
+      String mainDocName = toEntryName(mainDoc.getPartName());
+      try {
+        try (PackageWriter packageWriter = sink.openPackage(template, format, compression, reproducible)) {
+          for (TemplateArchive.Entry entry : reproducible ? template.getEntriesByName() : template.getEntries()) {
+            if (entry.getName().equals(mainDocName)) {
+              OutputStream part = packageWriter.openEntry(mainDocName);
+              try (OutputStream out = reproducible ? new RootNamespaceSorter(part) : part) {
+                mainDoc.marshal(out);
+              }
+            } else {
+              packageWriter.copyEntry(template, entry);
+            }
+          }
+          compressionNanos = packageWriter.getCompressionNanos();
+        }
+        sink.commit();
+      } finally {
+        sink.discard();
+      }
+    } catch (IOException | JAXBException e) {
+      throw new Docx4JException("Error writing " + sink.getName(), e);
+    }
+  }
+
+  /**
+   * Abandons a streamed package after a failure, so the sink keeps no
+   * partial package. Does nothing if the package was written.
+   */
+  public void discard() {
+    if (streamWriter != null) {
+      streamWriter.discard();
+      streamWriter = null;
+    }
+  }
+
+  private void saveWithDocx4j() throws Docx4JException {
+    if (reproducible) {
+      Log.warn("The package is saved by docx4j, as it has no template or parts not in the template; it is not reproducible.");
+    }
+    if (format == PackageFormat.DIRECTORY) {
+      throw new Docx4JException("The package has no template or parts not in the template and can not be written to a directory");
+    }
+    try {
+      try (OutputStream out = Channels.newOutputStream(sink.open(reproducible))) {
+        if (format == PackageFormat.FLAT_OPC) {
+          Docx4J.save(packageML, out, Docx4J.FLAG_SAVE_FLAT_XML);
+        } else {
+          packageML.save(out);
+        }
+      }
+      sink.commit();
+    } catch (IOException e) {
+      throw new Docx4JException("Error writing " + sink.getName(), e);
+    } finally {
+      sink.discard();
+    }
+  }
+
+  /**
+   * Checks if the template contains an entry for every part of the package,
+   * i.e. no parts have been added.
+   *
+   * @param template The template archive.
+   * @return true, if all parts of the package are in the template.
+   */
+  private boolean containsAllParts(TemplateArchive template) {
+    for (PartName partName : packageML.getParts().getParts().keySet()) {
+      if (template.findEntry(toEntryName(partName)) == null) {
+        return false;
+      }
+    }
+    return template.findEntry(toEntryName(mainDoc.getPartName())) != null;
+  }
+
+  private static String toEntryName(PartName partName) {
+    return partName.getName().substring(1);
   }
 
   /**
@@ -240,11 +836,7 @@ public class DocXWriter {
     P paragraph = factory.createP();
 
     if (style != null) {
-      PPr paragraphProps = factory.createPPr();
-      PPrBase.PStyle paragraphStyle = factory.createPPrBasePStyle();
-      paragraphStyle.setVal(style.getStyleId());
-      paragraphProps.setPStyle(paragraphStyle);
-      paragraph.setPPr(paragraphProps);
+      paragraph.setPPr(properties.getParagraphProperties(style));
     }
     if (runs != null) {
       paragraph.getContent().addAll(runs);
@@ -268,19 +860,32 @@ public class DocXWriter {
   /**
    * Adds a horizontal line.
    */
+  @Override
   public void addHorizontalLine() {
     P p = factory.createP();
-    PPr pPr = factory.createPPr();
-    p.setPPr(pPr);
-    PPrBase.PBdr bdr = factory.createPPrBasePBdr();
-    CTBorder bottom = factory.createCTBorder();
-    pPr.setPBdr(bdr);
-    bdr.setBottom(bottom);
-    bottom.setVal(org.docx4j.wml.STBorder.SINGLE);
-    bottom.setSz(new java.math.BigInteger("6")); //yuck
-    bottom.setSpace(new java.math.BigInteger("1"));
-    bottom.setColor("auto");
+    p.setPPr(properties.getHorizontalLineProperties());
     flushRunQueue();
-    mainDoc.getContent().add(p);
+    addBlock(p);
+  }
+
+  /**
+   * Adds a block (e.g. a paragraph) to the body of the document. In streaming
+   * mode the block is written to the sink at once, a fragment collects
+   * its blocks.
+   *
+   * @param block The block to add.
+   */
+  private void addBlock(Object block) {
+    if (fragmentBlocks != null) {
+      fragmentBlocks.add(block);
+    } else if (streamWriter == null) {
+      mainDoc.getContent().add(block);
+    } else {
+      try {
+        streamWriter.writeBlock(block);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
   }
 }
@@ -0,0 +1,222 @@
+package de.sky40.docxreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A sink writing to a file. A reproducible package is written to a temporary
+ * file next to the output file while its SHA-256 hash is computed. The
+ * temporary file replaces the output file on commit only if the content
+ * differs, so the modification time of an unchanged file is kept and caches
+ * and watchers downstream see no change.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class FileSink extends PackageSink {
+
+  private static final String HASH_ALGORITHM = "SHA-256";
+
+  private final File file;
+
+  /**
+   * The temporary file written instead of the output file, null if the output
+   * file is written directly.
+   */
+  private Path temporaryFile;
+
+  private WritableByteChannel channel;
+
+  /**
+   * The hash of the content, null if the output file is written directly.
+   */
+  private MessageDigest digest;
+
+  private byte[] contentHash;
+  private boolean isChanged = true;
+
+  FileSink(File file) {
+    this.file = file;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public String getName() {
+    return file.getPath();
+  }
+
+  /**
+   * Opens the file for writing. A reproducible package is written to a
+   * temporary file, so the output file is kept if the content is unchanged.
+   * The channel is seekable only if the output file is written directly.
+   */
+  @Override
+  WritableByteChannel open(boolean reproducible) throws IOException {
+    contentHash = null;
+    isChanged = true;
+    if (!reproducible) {
+      temporaryFile = null;
+      digest = null;
+      channel = FileChannel.open(file.toPath(),
+              StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+      return channel;
+    }
+    digest = newDigest();
+    Path directory = file.getAbsoluteFile().toPath().getParent();
+    // not Files.createTempFile, which restricts the permissions of the file
+    temporaryFile = directory.resolve(file.getName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+    channel = new HashingChannel(FileChannel.open(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), digest);
+    return channel;
+  }
+
+  /**
+   * Completes the file. A temporary file replaces the output file if the
+   * content differs and is deleted otherwise.
+   */
+  @Override
+  void commit() throws IOException {
+    WritableByteChannel written = channel;
+    channel = null;
+    written.close();
+    if (temporaryFile == null) {
+      return;
+    }
+    try {
+      contentHash = digest.digest();
+      Path target = file.toPath();
+      isChanged = !Files.isRegularFile(target) || Files.size(target) != Files.size(temporaryFile)
+              || !Arrays.equals(contentHash, hashOf(target));
+      if (isChanged) {
+        moveToTarget(target);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
+  }
+
+  private void moveToTarget(Path target) throws IOException {
+    try {
+      Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Closes the file after a failure. A temporary file is deleted, so the
+   * previous output file is kept.
+   */
+  @Override
+  void discard() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+      channel = null;
+      if (temporaryFile != null) {
+        Files.deleteIfExists(temporaryFile);
+      }
+    } catch (IOException e) {
+      Log.warn(() -> "Could not discard the output " + (temporaryFile != null ? temporaryFile : file) + ": " + e);
+    }
+  }
+
+  /**
+   * Indicates if the output file was written on commit.
+   *
+   * @return false if the content was unchanged and the file was kept.
+   */
+  @Override
+  public boolean isChanged() {
+    return isChanged;
+  }
+
+  /**
+   * Gets the hash of the content.
+   *
+   * @return The SHA-256 hash as hex string, null if the output file was
+   * written directly or is not committed yet.
+   */
+  @Override
+  public String getContentHash() {
+    if (contentHash == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (byte b : contentHash) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  private static byte[] hashOf(Path path) throws IOException {
+    MessageDigest fileDigest = newDigest();
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = Files.newInputStream(path)) {
+      int n;
+      while (0 < (n = in.read(buffer))) {
+        fileDigest.update(buffer, 0, n);
+      }
+    }
+    return fileDigest.digest();
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Updates the hash with the bytes written. Not seekable on purpose, as the
+   * bytes are hashed in the order they are written.
+   */
+  private static final class HashingChannel implements WritableByteChannel {
+
+    private final WritableByteChannel delegate;
+    private final MessageDigest digest;
+
+    HashingChannel(WritableByteChannel delegate, MessageDigest digest) {
+      this.delegate = delegate;
+      this.digest = digest;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      ByteBuffer written = src.duplicate();
+      int n = delegate.write(src);
+      ((Buffer) written).limit(written.position() + n);
+      digest.update(written);
+      return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return delegate.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+}
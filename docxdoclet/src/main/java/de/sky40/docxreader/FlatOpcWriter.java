@@ -0,0 +1,285 @@
+package de.sky40.docxreader;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Writes a package in the Flat OPC format: a single XML file with one
+ * pkg:part element per part, which Word opens like a docx file. XML parts are
+ * embedded as they are, other parts base64 encoded. Nothing is compressed,
+ * so the file is written straight through and diffs cleanly.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class FlatOpcWriter implements PackageWriter {
+
+  private static final String CONTENT_TYPES = "[Content_Types].xml";
+  private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+  private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+          + "<?mso-application progid=\"Word.Document\"?>\n"
+          + "<pkg:package xmlns:pkg=\"http://schemas.microsoft.com/office/2006/xmlPackage\">\n";
+  private static final String FOOTER = "</pkg:package>\n";
+
+  private final OutputStream out;
+
+  /**
+   * The content types of the template by lower case file extension.
+   */
+  private final Map<String, String> defaultTypes = new HashMap<>();
+
+  /**
+   * The content types of the template by part name (e.g. "/word/document.xml").
+   */
+  private final Map<String, String> overrideTypes = new HashMap<>();
+
+  private boolean isEntryOpen = false;
+  private boolean isFinished = false;
+
+  /**
+   * Creates a writer and writes the start of the package.
+   *
+   * @param channel The channel to write to. Closed when this writer is closed.
+   * @param template The template, whose content types are used for the parts.
+   * @throws IOException If the content types can not be read or writing
+   * fails.
+   */
+  public FlatOpcWriter(WritableByteChannel channel, TemplateArchive template) throws IOException {
+    readContentTypes(template);
+    this.out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+    write(HEADER);
+  }
+
+  /**
+   * Copies a part of a template. The content types are written as attributes
+   * of the parts, so "[Content_Types].xml" is skipped.
+   */
+  @Override
+  public void copyEntry(TemplateArchive archive, TemplateArchive.Entry entry) throws IOException {
+    if (entry.getName().equals(CONTENT_TYPES)) {
+      return;
+    }
+    try (InputStream in = archive.openEntry(entry); OutputStream part = openEntry(entry.getName())) {
+      byte[] buffer = new byte[64 * 1024];
+      int n;
+      while (0 < (n = in.read(buffer))) {
+        part.write(buffer, 0, n);
+      }
+    }
+  }
+
+  @Override
+  public OutputStream openEntry(String name) throws IOException {
+    if (isEntryOpen) {
+      throw new IllegalStateException("previous entry has not been closed");
+    }
+    if (isFinished) {
+      throw new IllegalStateException("package has already been finished");
+    }
+    String partName = "/" + name;
+    String contentType = contentTypeOf(partName);
+    write("<pkg:part pkg:name=\"" + escape(partName) + "\" pkg:contentType=\"" + escape(contentType) + "\"");
+    isEntryOpen = true;
+    if (isXml(contentType)) {
+      write("><pkg:xmlData>");
+      return new XmlPartStream();
+    }
+    write(" pkg:compression=\"store\"><pkg:binaryData>\n");
+    return new BinaryPartStream();
+  }
+
+  @Override
+  public long getCompressionNanos() {
+    return 0;
+  }
+
+  /**
+   * Writes the end of the package and closes the channel.
+   *
+   * @throws IOException If writing fails.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (!isFinished && !isEntryOpen) {
+        write(FOOTER);
+        isFinished = true;
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private void write(String s) throws IOException {
+    out.write(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void closePart(String end) throws IOException {
+    write(end);
+    isEntryOpen = false;
+  }
+
+  private String contentTypeOf(String partName) {
+    String type = overrideTypes.get(partName.toLowerCase(Locale.ROOT));
+    if (type == null) {
+      int dot = partName.lastIndexOf('.');
+      type = dot < 0 ? null : defaultTypes.get(partName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+    return type != null ? type : DEFAULT_CONTENT_TYPE;
+  }
+
+  private static boolean isXml(String contentType) {
+    return contentType.endsWith("+xml") || contentType.equals("application/xml") || contentType.equals("text/xml");
+  }
+
+  private static String escape(String s) {
+    return s.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+  }
+
+  private void readContentTypes(TemplateArchive template) throws IOException {
+    TemplateArchive.Entry entry = template.findEntry(CONTENT_TYPES);
+    if (entry == null) {
+      throw new IOException("template has no " + CONTENT_TYPES);
+    }
+    try (InputStream in = template.openEntry(entry)) {
+      XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      try {
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          String contentType = reader.getAttributeValue(null, "ContentType");
+          if (reader.getLocalName().equals("Default")) {
+            defaultTypes.put(reader.getAttributeValue(null, "Extension").toLowerCase(Locale.ROOT), contentType);
+          } else if (reader.getLocalName().equals("Override")) {
+            overrideTypes.put(reader.getAttributeValue(null, "PartName").toLowerCase(Locale.ROOT), contentType);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Error reading " + CONTENT_TYPES, e);
+    }
+  }
+
+  /**
+   * Embeds the content of an XML part without its XML declaration.
+   */
+  private final class XmlPartStream extends OutputStream {
+
+    /**
+     * The start of the content as long as it may be an XML declaration, null
+     * once the declaration is dropped or ruled out.
+     */
+    private ByteArrayOutputStream start = new ByteArrayOutputStream();
+    private boolean isClosed = false;
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (isClosed) {
+        throw new IOException("entry stream closed");
+      }
+      if (start == null) {
+        out.write(b, off, len);
+        return;
+      }
+      start.write(b, off, len);
+      String buffered = new String(start.toByteArray(), StandardCharsets.ISO_8859_1);
+      // an UTF-8 byte order mark may precede the declaration
+      String content = buffered.startsWith("\u00ef\u00bb\u00bf") ? buffered.substring(3) : buffered;
+      if (content.length() < 5) {
+        return;
+      }
+      if (!content.startsWith("<?xml")) {
+        writeStart(content);
+        return;
+      }
+      int end = content.indexOf("?>");
+      if (0 <= end) {
+        writeStart(content.substring(end + 2).replaceFirst("^\\s+", ""));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+      if (start != null) {
+        writeStart(new String(start.toByteArray(), StandardCharsets.ISO_8859_1));
+      }
+      closePart("</pkg:xmlData></pkg:part>\n");
+    }
+
+    private void writeStart(String content) throws IOException {
+      start = null;
+      out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+  }
+
+  /**
+   * Embeds the content of a binary part base64 encoded in lines of 76
+   * characters.
+   */
+  private final class BinaryPartStream extends OutputStream {
+
+    private final OutputStream encoder = Base64.getMimeEncoder().wrap(new FilterOutputStream(out) {
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        // the package stream stays open
+        flush();
+      }
+    });
+    private boolean isClosed = false;
+
+    @Override
+    public void write(int b) throws IOException {
+      encoder.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (isClosed) {
+        throw new IOException("entry stream closed");
+      }
+      encoder.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+      encoder.close();
+      closePart("\n</pkg:binaryData></pkg:part>\n");
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package de.sky40.docxreader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A content-addressed cache on disk for rendered document fragments, e.g. the
+ * pages of classes. The entries are keyed by a fingerprint of everything the
+ * content of the fragment depends on, so a fragment is taken from the cache
+ * only if it would be rendered the same way again.
+ *
+ * The cache is limited in size: {@link #evict()} deletes the least recently
+ * used entries exceeding the limit. Thread-safe.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class FragmentCache {
+
+  /**
+   * The version of the cache file format. Entries of other versions are
+   * ignored. Changes of the rendering are covered by the fingerprints of the
+   * fragments, which include the version of the renderer.
+   */
+  private static final int FORMAT_VERSION = 2;
+
+  private static final String SUFFIX = ".fragment";
+
+  /**
+   * The directory of the cache files.
+   */
+  private final File directory;
+
+  /**
+   * The maximum size of all cache files in bytes.
+   */
+  private final long maxSize;
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  private final AtomicInteger evicted = new AtomicInteger();
+
+  /**
+   * The time saved by the hits: the time the fragments took to render minus
+   * the time to load them.
+   */
+  private final AtomicLong savedNanos = new AtomicLong();
+
+  /**
+   * Creates a cache in a directory. The directory is created on first write.
+   *
+   * @param directory The directory of the cache files.
+   * @param maxSize The maximum size of all cache files in bytes.
+   */
+  public FragmentCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Loads a fragment. The entry is marked as recently used.
+   *
+   * @param key The fingerprint of the fragment.
+   * @return The content of the fragment or null if the cache has no (valid)
+   * entry for the key.
+   */
+  public byte[] load(String key) {
+    long start = System.nanoTime();
+    File file = fileOf(key);
+    if (!file.isFile()) {
+      misses.incrementAndGet();
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        misses.incrementAndGet();
+        return null;
+      }
+      long renderNanos = in.readLong();
+      byte[] content = new byte[in.readInt()];
+      in.readFully(content);
+      file.setLastModified(System.currentTimeMillis());
+      hits.incrementAndGet();
+      savedNanos.addAndGet(renderNanos - (System.nanoTime() - start));
+      return content;
+    } catch (IOException e) {
+      Log.warn(() -> "Ignoring unreadable fragment cache entry " + file + ": " + e.getMessage());
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * Stores a fragment. Errors are logged only, as the cache is not required
+   * for the document creation.
+   *
+   * @param key The fingerprint of the fragment.
+   * @param content The content of the fragment.
+   * @param renderNanos The time the fragment took to render.
+   */
+  public void store(String key, byte[] content, long renderNanos) {
+    File file = fileOf(key);
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 16);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(renderNanos);
+      out.writeInt(content.length);
+      out.write(content);
+
+      Files.createDirectories(directory.toPath());
+      File tempFile = File.createTempFile(key, ".tmp", directory);
+      boolean isMoved = false;
+      try {
+        try (OutputStream fileOut = Files.newOutputStream(tempFile.toPath())) {
+          bytes.writeTo(fileOut);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        isMoved = true;
+      } finally {
+        if (!isMoved) {
+          Files.deleteIfExists(tempFile.toPath());
+        }
+      }
+    } catch (IOException e) {
+      Log.warn(() -> "Could not write fragment cache entry " + file + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache does not exceed
+   * its maximum size.
+   */
+  public void evict() {
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+    if (files == null) {
+      return;
+    }
+    List<File> entries = new ArrayList<>(Arrays.asList(files));
+    // most recently used first
+    entries.sort(Comparator.comparingLong(File::lastModified).reversed());
+    long size = 0;
+    for (File entry : entries) {
+      size += entry.length();
+      if (maxSize < size) {
+        if (entry.delete()) {
+          evicted.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets a report on the cache usage.
+   *
+   * @return A line with the number of cache hits and misses, the hit rate
+   * and the time saved.
+   */
+  public String getReport() {
+    int hitCount = hits.get();
+    int total = hitCount + misses.get();
+    long rate = total == 0 ? 0 : Math.round(100.0 * hitCount / total);
+    return "fragment cache " + directory + ": " + hitCount + " hit(s), " + misses.get() + " miss(es), "
+            + rate + "% hit rate, " + Math.max(0, savedNanos.get() / 1000000) + " ms saved, "
+            + evicted.get() + " entry(s) evicted";
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  private File fileOf(String key) {
+    return new File(directory, key + SUFFIX);
+  }
+}
@@ -0,0 +1,162 @@
+package de.sky40.docxreader;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.function.Supplier;
+
+/**
+ * The log of the doclet. Messages are written to the console by an
+ * {@link AsyncAppender} if their level is enabled. Messages which are
+ * expensive to build are passed as suppliers, which are called only if the
+ * level is enabled.
+ *
+ * Thread-safe.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public final class Log {
+
+  /**
+   * The levels of messages, each level enables the levels before it.
+   */
+  public enum Level {
+    /**
+     * Failures.
+     */
+    ERROR,
+    /**
+     * Problems the document is created despite of, e.g. missing styles.
+     */
+    WARN,
+    /**
+     * Progress and reports.
+     */
+    INFO,
+    /**
+     * Details like the options and the parts of the template.
+     */
+    DEBUG
+  }
+
+  private static final AsyncAppender APPENDER = new AsyncAppender(System.out);
+
+  private static volatile Level level = Level.INFO;
+
+  private Log() {
+  }
+
+  /**
+   * Sets the level of the messages written.
+   *
+   * @param level The level, messages of this and all more severe levels are
+   * written.
+   */
+  public static void setLevel(Level level) {
+    Log.level = level;
+  }
+
+  public static Level getLevel() {
+    return level;
+  }
+
+  /**
+   * Checks if messages of a level are written.
+   *
+   * @param messageLevel The level of the messages.
+   * @return true if the level is enabled.
+   */
+  public static boolean isEnabled(Level messageLevel) {
+    return messageLevel.ordinal() <= level.ordinal();
+  }
+
+  public static void error(String message) {
+    log(Level.ERROR, message);
+  }
+
+  public static void error(Supplier<String> message) {
+    log(Level.ERROR, message);
+  }
+
+  /**
+   * Writes an error followed by the stack trace of its cause.
+   *
+   * @param message The message.
+   * @param cause The exception which caused the error.
+   */
+  public static void error(String message, Throwable cause) {
+    if (isEnabled(Level.ERROR)) {
+      StringWriter trace = new StringWriter();
+      try (PrintWriter out = new PrintWriter(trace)) {
+        cause.printStackTrace(out);
+      }
+      APPENDER.append(format(Level.ERROR, message) + System.lineSeparator() + trace.toString().trim());
+    }
+  }
+
+  public static void warn(String message) {
+    log(Level.WARN, message);
+  }
+
+  public static void warn(Supplier<String> message) {
+    log(Level.WARN, message);
+  }
+
+  public static void info(String message) {
+    log(Level.INFO, message);
+  }
+
+  public static void info(Supplier<String> message) {
+    log(Level.INFO, message);
+  }
+
+  public static void debug(String message) {
+    log(Level.DEBUG, message);
+  }
+
+  public static void debug(Supplier<String> message) {
+    log(Level.DEBUG, message);
+  }
+
+  /**
+   * Writes a message if its level is enabled.
+   *
+   * @param messageLevel The level of the message.
+   * @param message The message.
+   */
+  public static void log(Level messageLevel, String message) {
+    if (isEnabled(messageLevel)) {
+      APPENDER.append(format(messageLevel, message));
+    }
+  }
+
+  /**
+   * Writes a message if its level is enabled.
+   *
+   * @param messageLevel The level of the message.
+   * @param message The supplier of the message, called only if the level is
+   * enabled.
+   */
+  public static void log(Level messageLevel, Supplier<String> message) {
+    if (isEnabled(messageLevel)) {
+      APPENDER.append(format(messageLevel, message.get()));
+    }
+  }
+
+  /**
+   * Waits until all messages are written, e.g. before the VM exits.
+   */
+  public static void flush() {
+    APPENDER.flush();
+  }
+
+  private static String format(Level messageLevel, String message) {
+    switch (messageLevel) {
+      case ERROR:
+        return "ERROR: " + message;
+      case WARN:
+        return "WARNING: " + message;
+      default:
+        return message;
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package de.sky40.docxreader;
+
+/**
+ * The formats a package can be written in.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public enum PackageFormat {
+  /**
+   * A zip file, the docx format.
+   */
+  DOCX,
+  /**
+   * Flat OPC, a single XML file with all parts, which Word opens as well.
+   */
+  FLAT_OPC,
+  /**
+   * An exploded package, a directory with a file per part.
+   */
+  DIRECTORY
+}
@@ -0,0 +1,159 @@
+package de.sky40.docxreader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The destination a {@link DocXWriter} writes the package to: a file, an
+ * output stream, a channel or an in-memory buffer. The package is written to
+ * the channel returned by {@link #open(boolean)} and completed by
+ * {@link #commit()}, or {@link #discard()} is called after a failure.
+ *
+ * Streams and channels of the caller are flushed but not closed.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public abstract class PackageSink {
+
+  PackageSink() {
+  }
+
+  /**
+   * Creates a sink writing to a file.
+   *
+   * @param file The file.
+   * @return The sink.
+   */
+  public static FileSink toFile(File file) {
+    return new FileSink(file);
+  }
+
+  /**
+   * Creates a sink writing to an output stream, e.g. the response of a web
+   * service. The stream is not closed.
+   *
+   * @param out The stream.
+   * @return The sink.
+   */
+  public static PackageSink toStream(OutputStream out) {
+    return new ChannelSink(Channels.newChannel(out), out, "stream");
+  }
+
+  /**
+   * Creates a sink writing to a channel. The channel is not closed.
+   *
+   * @param channel The channel.
+   * @return The sink.
+   */
+  public static PackageSink toChannel(WritableByteChannel channel) {
+    return new ChannelSink(channel, null, "channel");
+  }
+
+  /**
+   * Creates a sink writing to an in-memory buffer of a pool. The buffer holds
+   * the package after {@link DocXWriter#write()} and must be released by the
+   * caller.
+   *
+   * @param pool The pool of the buffer memory.
+   * @return The sink.
+   */
+  public static BufferSink toBuffer(BufferPool pool) {
+    return new BufferSink(pool);
+  }
+
+  /**
+   * Creates a sink writing an exploded package to a directory, see
+   * {@link PackageFormat#DIRECTORY}.
+   *
+   * @param directory The directory, created if it does not exist.
+   * @return The sink.
+   */
+  public static DirectorySink toDirectory(File directory) {
+    return new DirectorySink(directory);
+  }
+
+  /**
+   * Opens the writer of the package.
+   *
+   * @param template The template, whose content types are used by the Flat
+   * OPC format.
+   * @param format The format of the package.
+   * @param compression The compression of the main document in a docx file.
+   * @param reproducible true if the package is written reproducibly.
+   * @return The writer. Closing it does not complete the sink.
+   * @throws IOException If the sink can not be opened or does not support the
+   * format.
+   */
+  PackageWriter openPackage(TemplateArchive template, PackageFormat format, ZipCompression compression,
+          boolean reproducible) throws IOException {
+    switch (format) {
+      case DOCX:
+        ZipPackageWriter zip = new ZipPackageWriter(open(reproducible), compression);
+        if (reproducible) {
+          zip.setFixedTime(ZipPackageWriter.REPRODUCIBLE_TIME);
+        }
+        return zip;
+      case FLAT_OPC:
+        WritableByteChannel channel = open(reproducible);
+        try {
+          return new FlatOpcWriter(channel, template);
+        } catch (IOException e) {
+          channel.close();
+          throw e;
+        }
+      default:
+        throw new IOException("The format " + format + " can only be written to a directory");
+    }
+  }
+
+  /**
+   * Opens the channel to write the package to.
+   *
+   * @param reproducible true if the package is written reproducibly.
+   * @return The channel. It is closed by the writer of the package, which
+   * does not complete the sink.
+   * @throws IOException If the sink can not be opened.
+   */
+  abstract WritableByteChannel open(boolean reproducible) throws IOException;
+
+  /**
+   * Completes the sink after the package was written.
+   *
+   * @throws IOException If the sink can not be completed.
+   */
+  abstract void commit() throws IOException;
+
+  /**
+   * Releases the sink after a failure. Does nothing after {@link #commit()}.
+   */
+  abstract void discard();
+
+  /**
+   * Gets the name of the sink for messages.
+   *
+   * @return The name, e.g. the path of a file.
+   */
+  public abstract String getName();
+
+  /**
+   * Indicates if the sink was written on commit.
+   *
+   * @return false if the sink kept its previous content, which was the same.
+   */
+  public boolean isChanged() {
+    return true;
+  }
+
+  /**
+   * Gets the hash of the content written.
+   *
+   * @return The SHA-256 hash as hex string, null if the sink does not compute
+   * a hash.
+   */
+  public String getContentHash() {
+    return null;
+  }
+}
@@ -0,0 +1,43 @@
+package de.sky40.docxreader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the parts of a package in one of the {@link PackageFormat}s. Parts
+ * of the template are copied, new parts are written via a stream, one part
+ * at a time.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public interface PackageWriter extends Closeable {
+
+  /**
+   * Copies a part of a template, without decompressing it if the format
+   * allows.
+   *
+   * @param archive The archive containing the part.
+   * @param entry The entry of the part.
+   * @throws IOException If reading or writing fails.
+   */
+  void copyEntry(TemplateArchive archive, TemplateArchive.Entry entry) throws IOException;
+
+  /**
+   * Starts a new part. The part is complete when the returned stream is
+   * closed.
+   *
+   * @param name The name of the entry of the part (e.g. "word/document.xml").
+   * @return The stream to write the content of the part to.
+   * @throws IOException If writing fails.
+   */
+  OutputStream openEntry(String name) throws IOException;
+
+  /**
+   * Gets the time spent compressing parts.
+   *
+   * @return The time in nanoseconds, summed over all threads, 0 for formats
+   * without compression.
+   */
+  long getCompressionNanos();
+}
@@ -16,10 +16,12 @@ public class ParamsInfo {
 
   private final Parameter parameter;
   private final ExecutableMemberDoc doc;
+  private final String comment;
 
-  public ParamsInfo(Parameter parameter, ExecutableMemberDoc doc) {
+  public ParamsInfo(Parameter parameter, ExecutableMemberDoc doc, String comment) {
     this.parameter = parameter;
     this.doc = doc;
+    this.comment = comment;
   }
 
   public ExecutableMemberDoc getDoc() {
@@ -30,4 +32,8 @@ public class ParamsInfo {
     return parameter;
   }
 
+  public String getComment() {
+    return comment;
+  }
+
 }
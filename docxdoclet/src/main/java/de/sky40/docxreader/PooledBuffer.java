@@ -0,0 +1,173 @@
+package de.sky40.docxreader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An in-memory buffer of chunks taken from a {@link BufferPool}. It grows
+ * without copying the bytes written so far. Bytes are appended as to a
+ * channel; once closed the content can be read as often as needed until the
+ * buffer is released.
+ *
+ * Not thread-safe.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class PooledBuffer implements WritableByteChannel {
+
+  private final BufferPool pool;
+  private final List<byte[]> chunks = new ArrayList<>();
+  private long size = 0;
+  private boolean isOpen = true;
+  private boolean isReleased = false;
+
+  PooledBuffer(BufferPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    if (!isOpen) {
+      throw new ClosedChannelException();
+    }
+    int written = src.remaining();
+    int chunkSize = pool.getChunkSize();
+    while (src.hasRemaining()) {
+      int index = (int) (size / chunkSize);
+      int offset = (int) (size % chunkSize);
+      if (index == chunks.size()) {
+        chunks.add(pool.takeChunk());
+      }
+      int n = Math.min(src.remaining(), chunkSize - offset);
+      src.get(chunks.get(index), offset, n);
+      size += n;
+    }
+    return written;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return isOpen;
+  }
+
+  /**
+   * Completes the content, no more bytes can be written.
+   */
+  @Override
+  public void close() {
+    isOpen = false;
+  }
+
+  /**
+   * Gets the number of bytes written.
+   *
+   * @return The size of the content.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Writes the content to a stream, e.g. the response of a web service.
+   *
+   * @param out The stream, which is not closed.
+   * @throws IOException If writing fails.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    checkNotReleased();
+    int chunkSize = pool.getChunkSize();
+    long remaining = size;
+    for (int i = 0; 0 < remaining; i++) {
+      int n = (int) Math.min(remaining, chunkSize);
+      out.write(chunks.get(i), 0, n);
+      remaining -= n;
+    }
+  }
+
+  /**
+   * Copies the content into a new array.
+   *
+   * @return The content.
+   * @throws IllegalStateException If the content is too large for an array.
+   */
+  public byte[] toByteArray() {
+    checkNotReleased();
+    if (Integer.MAX_VALUE - 8 < size) {
+      throw new IllegalStateException("buffer too large for an array: " + size + " bytes");
+    }
+    byte[] bytes = new byte[(int) size];
+    int chunkSize = pool.getChunkSize();
+    int offset = 0;
+    for (int i = 0; offset < bytes.length; i++) {
+      int n = Math.min(bytes.length - offset, chunkSize);
+      System.arraycopy(chunks.get(i), 0, bytes, offset, n);
+      offset += n;
+    }
+    return bytes;
+  }
+
+  /**
+   * Opens a stream reading the content. The stream must not be used after the
+   * buffer was released.
+   *
+   * @return The stream.
+   */
+  public InputStream newInputStream() {
+    checkNotReleased();
+    return new InputStream() {
+      private long position = 0;
+
+      @Override
+      public int read() {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) {
+        checkNotReleased();
+        if (size <= position) {
+          return len == 0 ? 0 : -1;
+        }
+        int chunkSize = pool.getChunkSize();
+        int offset = (int) (position % chunkSize);
+        int n = (int) Math.min(Math.min(len, chunkSize - offset), size - position);
+        System.arraycopy(chunks.get((int) (position / chunkSize)), offset, b, off, n);
+        position += n;
+        return n;
+      }
+
+      @Override
+      public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+      }
+    };
+  }
+
+  /**
+   * Returns the memory to the pool. The content can not be read afterwards.
+   */
+  public void release() {
+    if (isReleased) {
+      return;
+    }
+    isReleased = true;
+    isOpen = false;
+    for (byte[] chunk : chunks) {
+      pool.releaseChunk(chunk);
+    }
+    chunks.clear();
+  }
+
+  private void checkNotReleased() {
+    if (isReleased) {
+      throw new IllegalStateException("buffer has been released");
+    }
+  }
+}
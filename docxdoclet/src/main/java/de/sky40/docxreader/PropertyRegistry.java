@@ -0,0 +1,112 @@
+package de.sky40.docxreader;
+
+import de.sky40.docxreader.domain.Style;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.docx4j.wml.Br;
+import org.docx4j.wml.CTBorder;
+import org.docx4j.wml.ObjectFactory;
+import org.docx4j.wml.PPr;
+import org.docx4j.wml.PPrBase;
+import org.docx4j.wml.STBorder;
+import org.docx4j.wml.STBrType;
+
+/**
+ * Shared paragraph properties and breaks. The objects are built once per
+ * resolved style when the registry is created and reused by every paragraph
+ * and run written with them, so writing a member allocates no property
+ * objects.
+ *
+ * The registered objects must never be modified. docx4j sets the parent of an
+ * object added to a content list, so the parent of a shared object points to
+ * an arbitrary user of it; it is not used for writing the document. The
+ * registry itself is immutable and can be used by several threads.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class PropertyRegistry {
+
+  private final ObjectFactory factory;
+
+  /**
+   * The paragraph properties by (paragraph) style.
+   */
+  private final Map<Style, PPr> paragraphProperties;
+
+  private final Br lineBreak;
+  private final Br pageBreak;
+
+  /**
+   * The properties of a paragraph with a bottom border.
+   */
+  private final PPr horizontalLineProperties;
+
+  /**
+   * Creates the shared objects for styles.
+   *
+   * @param factory The WML object factory.
+   * @param styles The styles of the template.
+   */
+  public PropertyRegistry(ObjectFactory factory, Collection<Style> styles) {
+    this.factory = factory;
+    Map<Style, PPr> properties = new IdentityHashMap<>();
+    for (Style style : styles) {
+      if (style != null && style.getStyleId() != null) {
+        properties.put(style, createParagraphProperties(style.getStyleId()));
+      }
+    }
+    this.paragraphProperties = Collections.unmodifiableMap(properties);
+
+    this.lineBreak = factory.createBr();
+    this.pageBreak = factory.createBr();
+    this.pageBreak.setType(STBrType.PAGE);
+
+    this.horizontalLineProperties = factory.createPPr();
+    PPrBase.PBdr bdr = factory.createPPrBasePBdr();
+    CTBorder bottom = factory.createCTBorder();
+    horizontalLineProperties.setPBdr(bdr);
+    bdr.setBottom(bottom);
+    bottom.setVal(STBorder.SINGLE);
+    bottom.setSz(BigInteger.valueOf(6));
+    bottom.setSpace(BigInteger.ONE);
+    bottom.setColor("auto");
+  }
+
+  /**
+   * Gets the paragraph properties of a style.
+   *
+   * @param style The style.
+   * @return The shared properties of a registered style, new properties for
+   * other styles with a style id, or null if the style has no style id.
+   */
+  public PPr getParagraphProperties(Style style) {
+    if (style == null || style.getStyleId() == null) {
+      return null;
+    }
+    PPr properties = paragraphProperties.get(style);
+    return properties != null ? properties : createParagraphProperties(style.getStyleId());
+  }
+
+  public Br getLineBreak() {
+    return lineBreak;
+  }
+
+  public Br getPageBreak() {
+    return pageBreak;
+  }
+
+  public PPr getHorizontalLineProperties() {
+    return horizontalLineProperties;
+  }
+
+  private PPr createParagraphProperties(String styleId) {
+    PPr properties = factory.createPPr();
+    PPrBase.PStyle paragraphStyle = factory.createPPrBasePStyle();
+    paragraphStyle.setVal(styleId);
+    properties.setPStyle(paragraphStyle);
+    return properties;
+  }
+}
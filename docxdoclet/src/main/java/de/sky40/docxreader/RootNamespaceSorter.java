@@ -0,0 +1,115 @@
+package de.sky40.docxreader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sorts the namespace declarations of the document element by prefix. JAXB
+ * declares the namespaces in an order which may change from run to run, so
+ * the same document is not marshalled to the same bytes otherwise. The stream
+ * buffers the content only until the start tag of the document element is
+ * complete.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+class RootNamespaceSorter extends FilterOutputStream {
+
+  private static final String ROOT_START = "<w:document";
+
+  /**
+   * Finds the attributes of a start tag.
+   */
+  private static final Pattern ATTRIBUTE = Pattern.compile("\\s+([\\w.:-]+)=\"[^\"]*\"");
+
+  /**
+   * The content up to the end of the root start tag, null once it is written.
+   */
+  private ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+  RootNamespaceSorter(OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (head == null) {
+      out.write(b, off, len);
+      return;
+    }
+    head.write(b, off, len);
+    // the tag consists of ASCII characters, so it is found in the raw bytes
+    String buffered = new String(head.toByteArray(), StandardCharsets.ISO_8859_1);
+    int rootStart = buffered.indexOf(ROOT_START);
+    if (0 <= rootStart && 0 <= buffered.indexOf('>', rootStart)) {
+      writeHead();
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    // the head is written as soon as it is complete
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (head != null) {
+      writeHead();
+    }
+    super.close();
+  }
+
+  private void writeHead() throws IOException {
+    String buffered = new String(head.toByteArray(), StandardCharsets.UTF_8);
+    head = null;
+    out.write(sort(buffered).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Sorts the namespace declarations of the document element. Other
+   * attributes, like mc:Ignorable, follow the declarations in their order.
+   *
+   * @param xml The start of the main document, including the start tag of the
+   * document element.
+   * @return The xml with sorted declarations, unchanged if the document
+   * element is not found.
+   */
+  static String sort(String xml) {
+    int rootStart = xml.indexOf(ROOT_START);
+    int rootEnd = rootStart < 0 ? -1 : xml.indexOf('>', rootStart);
+    if (rootEnd < 0) {
+      return xml;
+    }
+    int attributesEnd = xml.charAt(rootEnd - 1) == '/' ? rootEnd - 1 : rootEnd;
+    List<String> declarations = new ArrayList<>();
+    List<String> attributes = new ArrayList<>();
+    Matcher m = ATTRIBUTE.matcher(xml.substring(rootStart + ROOT_START.length(), attributesEnd));
+    while (m.find()) {
+      if (m.group(1).startsWith("xmlns")) {
+        declarations.add(m.group().trim());
+      } else {
+        attributes.add(m.group().trim());
+      }
+    }
+    Collections.sort(declarations);
+    declarations.addAll(attributes);
+    StringBuilder sb = new StringBuilder(xml.substring(0, rootStart + ROOT_START.length()));
+    for (String attribute : declarations) {
+      sb.append(' ').append(attribute);
+    }
+    return sb.append(xml.substring(attributesEnd)).toString();
+  }
+}
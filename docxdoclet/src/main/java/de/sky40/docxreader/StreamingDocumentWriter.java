@@ -0,0 +1,644 @@
+package de.sky40.docxreader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.XMLConstants;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.docx4j.jaxb.Context;
+import org.docx4j.jaxb.NamespacePrefixMapperUtils;
+import org.docx4j.openpackaging.exceptions.Docx4JException;
+import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
+import org.docx4j.wml.Body;
+import org.docx4j.wml.P;
+import org.docx4j.wml.SectPr;
+
+/**
+ * Writes a docx package while the document is created. The parts of the
+ * template are copied first, then the main document is written paragraph by
+ * paragraph via StAX directly into the zip entry. Only the paragraph being
+ * written is held in memory.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class StreamingDocumentWriter implements Closeable {
+
+  /**
+   * Finds the namespace declarations of the root element.
+   */
+  private static final Pattern NAMESPACE_DECLARATION = Pattern.compile("xmlns:([\\w.-]+)=\"([^\"]*)\"");
+
+  private static final String BODY_END = "</w:body>";
+  private static final String BODY_EMPTY = "<w:body/>";
+  private static final byte[] PARAGRAPH_START = "<w:p>".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] PARAGRAPH_END = "</w:p>".getBytes(StandardCharsets.UTF_8);
+
+  private final PackageWriter packageWriter;
+
+  /**
+   * The sink the package is written to, committed on close.
+   */
+  private final PackageSink sink;
+
+  /**
+   * The stream of the main document entry.
+   */
+  private final OutputStream entryStream;
+
+  /**
+   * The StAX writer on the main document entry.
+   */
+  private final XMLStreamWriter xmlWriter;
+
+  /**
+   * Marshals the JAXB objects as fragments without namespace declarations.
+   */
+  private final Marshaller marshaller;
+
+  /**
+   * The namespaces declared on the document element as "prefix=uri".
+   */
+  private final Set<String> rootNamespaces;
+
+  /**
+   * The end of the main document after the body content.
+   */
+  private final byte[] tail;
+
+  /**
+   * The section properties of the template body, written after the content.
+   */
+  private final SectPr sectPr;
+
+  private boolean isClosed = false;
+
+  private StreamingDocumentWriter(PackageWriter packageWriter, PackageSink sink, MainDocumentPart mainDoc, boolean reproducible)
+          throws IOException, JAXBException, XMLStreamException {
+    this.packageWriter = packageWriter;
+    this.sink = sink;
+
+    // marshal the template document without section properties and split it
+    // at the end of the body
+    Body body;
+    try {
+      body = mainDoc.getContents().getBody();
+    } catch (Docx4JException e) {
+      throw new IOException("Error reading main document", e);
+    }
+    this.sectPr = body.getSectPr();
+    ByteArrayOutputStream template = new ByteArrayOutputStream();
+    body.setSectPr(null);
+    try {
+      mainDoc.marshal(template);
+    } finally {
+      body.setSectPr(sectPr);
+    }
+    String document = new String(template.toByteArray(), StandardCharsets.UTF_8);
+    String head;
+    int bodyEnd = document.lastIndexOf(BODY_END);
+    if (0 <= bodyEnd) {
+      head = document.substring(0, bodyEnd);
+      this.tail = document.substring(bodyEnd).getBytes(StandardCharsets.UTF_8);
+    } else {
+      int emptyBody = document.lastIndexOf(BODY_EMPTY);
+      if (emptyBody < 0) {
+        throw new IOException("no body found in main document");
+      }
+      head = document.substring(0, emptyBody) + "<w:body>";
+      this.tail = (BODY_END + document.substring(emptyBody + BODY_EMPTY.length())).getBytes(StandardCharsets.UTF_8);
+    }
+    if (reproducible) {
+      head = RootNamespaceSorter.sort(head);
+    }
+    this.rootNamespaces = findRootNamespaces(head);
+
+    this.marshaller = createMarshaller();
+
+    this.entryStream = packageWriter.openEntry(mainDoc.getPartName().getName().substring(1));
+    entryStream.write(head.getBytes(StandardCharsets.UTF_8));
+    this.xmlWriter = new FragmentStreamWriter(XMLOutputFactory.newInstance().createXMLStreamWriter(entryStream, "UTF-8"));
+  }
+
+  /**
+   * Opens the sink and writes all parts of the template except the main
+   * document, which is written by {@link #writeBlock(java.lang.Object)}.
+   *
+   * @param template The template archive.
+   * @param mainDoc The main document part of the template.
+   * @param sink The sink to write to, committed when the writer is closed.
+   * @param format The format of the package.
+   * @param compression The compression of the main document.
+   * @param reproducible true to write the same bytes for the same content:
+   * the parts are sorted by name, all entries have the same time and the
+   * namespace declarations are sorted.
+   * @return The writer. Must be closed to complete the file.
+   * @throws IOException If writing fails.
+   */
+  public static StreamingDocumentWriter open(TemplateArchive template, MainDocumentPart mainDoc, PackageSink sink,
+          PackageFormat format, ZipCompression compression, boolean reproducible) throws IOException {
+    String mainDocName = mainDoc.getPartName().getName().substring(1);
+    PackageWriter packageWriter;
+    try {
+      packageWriter = sink.openPackage(template, format, compression, reproducible);
+    } catch (IOException | RuntimeException e) {
+      sink.discard();
+      throw e;
+    }
+    try {
+      for (TemplateArchive.Entry entry : reproducible ? template.getEntriesByName() : template.getEntries()) {
+        if (!entry.getName().equals(mainDocName)) {
+          packageWriter.copyEntry(template, entry);
+        }
+      }
+      return new StreamingDocumentWriter(packageWriter, sink, mainDoc, reproducible);
+    } catch (IOException | JAXBException | XMLStreamException | RuntimeException e) {
+      try {
+        packageWriter.close();
+      } finally {
+        sink.discard();
+      }
+      throw e instanceof IOException ? (IOException) e : new IOException("Error writing main document", e);
+    }
+  }
+
+  /**
+   * Serializes a JAXB object (e.g. a run) once, so it can be spliced into
+   * paragraphs as {@link XmlFragment} again and again. May be called from any
+   * thread.
+   *
+   * @param jaxbObject The object to serialize.
+   * @return The serialized object.
+   * @throws IOException If the object can not be marshalled.
+   */
+  public XmlFragment serialize(Object jaxbObject) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      XMLStreamWriter fragmentWriter = new FragmentStreamWriter(XMLOutputFactory.newInstance().createXMLStreamWriter(bytes, "UTF-8"));
+      createMarshaller().marshal(jaxbObject, fragmentWriter);
+      fragmentWriter.flush();
+    } catch (JAXBException | XMLStreamException e) {
+      throw new IOException("Error serializing " + jaxbObject, e);
+    }
+    return new XmlFragment(bytes.toByteArray());
+  }
+
+  /**
+   * Serializes a sequence of blocks exactly as {@link #writeBlock} would write
+   * them, so they can be written later with {@link #writeFragment}. May be
+   * called from any thread.
+   *
+   * @param blocks The blocks to serialize.
+   * @return The serialized blocks.
+   * @throws IOException If a block can not be marshalled.
+   */
+  public XmlFragment serializeBlocks(List<Object> blocks) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      XMLStreamWriter fragmentWriter = new FragmentStreamWriter(XMLOutputFactory.newInstance().createXMLStreamWriter(bytes, "UTF-8"));
+      Marshaller fragmentMarshaller = createMarshaller();
+      for (Object block : blocks) {
+        writeBlock(block, fragmentMarshaller, fragmentWriter, bytes);
+      }
+      fragmentWriter.flush();
+    } catch (JAXBException | XMLStreamException e) {
+      throw new IOException("Error serializing blocks", e);
+    }
+    return new XmlFragment(bytes.toByteArray());
+  }
+
+  /**
+   * Writes a block (e.g. a paragraph) to the body of the main document.
+   * Paragraphs may contain {@link XmlFragment}s.
+   *
+   * @param block The block to write.
+   * @throws IOException If writing fails.
+   */
+  public void writeBlock(Object block) throws IOException {
+    try {
+      writeBlock(block, marshaller, xmlWriter, entryStream);
+    } catch (JAXBException | XMLStreamException e) {
+      throw new IOException("Error writing " + block, e);
+    }
+  }
+
+  /**
+   * Writes serialized blocks to the body of the main document.
+   *
+   * @param blocks The blocks serialized by {@link #serializeBlocks}.
+   * @throws IOException If writing fails.
+   */
+  public void writeFragment(XmlFragment blocks) throws IOException {
+    try {
+      writeRaw(xmlWriter, entryStream, blocks.getBytes());
+    } catch (XMLStreamException e) {
+      throw new IOException("Error writing blocks", e);
+    }
+  }
+
+  /**
+   * Gets the time spent compressing the main document.
+   *
+   * @return The time in nanoseconds, summed over all deflating threads.
+   */
+  public long getCompressionNanos() {
+    return packageWriter.getCompressionNanos();
+  }
+
+  /**
+   * Completes the main document and the package and commits the sink.
+   *
+   * @throws IOException If writing fails.
+   */
+  @Override
+  public void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    try {
+      boolean isComplete = false;
+      try {
+        if (sectPr != null) {
+          marshaller.marshal(sectPr, xmlWriter);
+        }
+        xmlWriter.flush();
+        entryStream.write(tail);
+        entryStream.close();
+        isComplete = true;
+      } catch (JAXBException | XMLStreamException e) {
+        throw new IOException("Error completing main document", e);
+      } finally {
+        if (isComplete) {
+          packageWriter.close();
+        } else {
+          // keep the original failure
+          closeAbandoned();
+        }
+      }
+      sink.commit();
+    } finally {
+      sink.discard();
+    }
+  }
+
+  /**
+   * Abandons the package after a failure: the package writer is closed
+   * without completing the main document and the sink is discarded. Does
+   * nothing after {@link #close()}.
+   */
+  public void discard() {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    try {
+      closeAbandoned();
+    } finally {
+      sink.discard();
+    }
+  }
+
+  private void closeAbandoned() {
+    try {
+      packageWriter.close();
+    } catch (IOException | RuntimeException e) {
+      Log.debug(() -> "Closing the abandoned package failed: " + e);
+    }
+  }
+
+  private static void writeBlock(Object block, Marshaller marshaller, XMLStreamWriter xml, OutputStream out) throws JAXBException, XMLStreamException, IOException {
+    if (block instanceof P && containsFragments((P) block)) {
+      P paragraph = (P) block;
+      writeRaw(xml, out, PARAGRAPH_START);
+      if (paragraph.getPPr() != null) {
+        marshaller.marshal(paragraph.getPPr(), xml);
+      }
+      for (Object content : paragraph.getContent()) {
+        if (content instanceof XmlFragment) {
+          writeRaw(xml, out, ((XmlFragment) content).getBytes());
+        } else {
+          marshaller.marshal(content, xml);
+        }
+      }
+      writeRaw(xml, out, PARAGRAPH_END);
+    } else {
+      marshaller.marshal(block, xml);
+    }
+  }
+
+  private static void writeRaw(XMLStreamWriter xml, OutputStream out, byte[] bytes) throws XMLStreamException, IOException {
+    xml.flush();
+    out.write(bytes);
+  }
+
+  /**
+   * Creates a marshaller for JAXB objects as fragments of the main document.
+   * Marshallers are not thread-safe, so each thread needs its own.
+   *
+   * @return The marshaller.
+   * @throws JAXBException If the marshaller can not be created.
+   */
+  private static Marshaller createMarshaller() throws JAXBException {
+    Marshaller fragmentMarshaller = Context.jc.createMarshaller();
+    NamespacePrefixMapperUtils.setProperty(fragmentMarshaller, NamespacePrefixMapperUtils.getPrefixMapper());
+    fragmentMarshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+    return fragmentMarshaller;
+  }
+
+  private static boolean containsFragments(P paragraph) {
+    for (Object content : paragraph.getContent()) {
+      if (content instanceof XmlFragment) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Set<String> findRootNamespaces(String head) {
+    Set<String> namespaces = new HashSet<>();
+    int rootStart = head.indexOf("<w:document");
+    int rootEnd = head.indexOf('>', rootStart);
+    if (0 <= rootStart && 0 <= rootEnd) {
+      Matcher m = NAMESPACE_DECLARATION.matcher(head.substring(rootStart, rootEnd));
+      while (m.find()) {
+        namespaces.add(m.group(1) + "=" + m.group(2));
+      }
+    }
+    return namespaces;
+  }
+
+  /**
+   * A piece of serialized WordprocessingML which can be added to paragraphs
+   * in place of a JAXB object.
+   *
+   * Immutable type.
+   */
+  public static final class XmlFragment {
+
+    private final byte[] bytes;
+
+    XmlFragment(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    byte[] getBytes() {
+      return bytes;
+    }
+  }
+
+  /**
+   * Delegating StAX writer which drops the namespace declarations already made
+   * on the document element, so fragments do not repeat them. Elements without
+   * content are written as empty elements.
+   */
+  private final class FragmentStreamWriter implements XMLStreamWriter {
+
+    private final XMLStreamWriter delegate;
+
+    /**
+     * The start element not written yet, as it may turn out to be empty:
+     * prefix, local name and namespace followed by the attributes as prefix,
+     * namespace, local name and value.
+     */
+    private final List<String> pendingElement = new ArrayList<>();
+
+    FragmentStreamWriter(XMLStreamWriter delegate) {
+      this.delegate = delegate;
+    }
+
+    /**
+     * Writes the pending start element, if any.
+     *
+     * @param isEmpty true, if the element is written as empty element.
+     */
+    private void writePending(boolean isEmpty) throws XMLStreamException {
+      if (pendingElement.isEmpty()) {
+        return;
+      }
+      if (isEmpty) {
+        delegate.writeEmptyElement(pendingElement.get(0), pendingElement.get(1), pendingElement.get(2));
+      } else {
+        delegate.writeStartElement(pendingElement.get(0), pendingElement.get(1), pendingElement.get(2));
+      }
+      for (int i = 3; i < pendingElement.size(); i += 4) {
+        delegate.writeAttribute(pendingElement.get(i), pendingElement.get(i + 1), pendingElement.get(i + 2), pendingElement.get(i + 3));
+      }
+      pendingElement.clear();
+    }
+
+    @Override
+    public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+      if (prefix.isEmpty() || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+        writeDefaultNamespace(namespaceURI);
+      } else if (!rootNamespaces.contains(prefix + "=" + namespaceURI)) {
+        writePending(false);
+        delegate.writeNamespace(prefix, namespaceURI);
+      }
+    }
+
+    @Override
+    public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+      // the document element declares no default namespace
+      if (!namespaceURI.isEmpty()) {
+        writePending(false);
+        delegate.writeDefaultNamespace(namespaceURI);
+      }
+    }
+
+    @Override
+    public void writeStartElement(String localName) throws XMLStreamException {
+      writePending(false);
+      delegate.writeStartElement(localName);
+    }
+
+    @Override
+    public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+      writePending(false);
+      delegate.writeStartElement(namespaceURI, localName);
+    }
+
+    @Override
+    public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+      writePending(false);
+      pendingElement.add(prefix);
+      pendingElement.add(localName);
+      pendingElement.add(namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+      writePending(false);
+      delegate.writeEmptyElement(namespaceURI, localName);
+    }
+
+    @Override
+    public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+      writePending(false);
+      delegate.writeEmptyElement(prefix, localName, namespaceURI);
+    }
+
+    @Override
+    public void writeEmptyElement(String localName) throws XMLStreamException {
+      writePending(false);
+      delegate.writeEmptyElement(localName);
+    }
+
+    @Override
+    public void writeEndElement() throws XMLStreamException {
+      if (pendingElement.isEmpty()) {
+        delegate.writeEndElement();
+      } else {
+        writePending(true);
+      }
+    }
+
+    @Override
+    public void writeEndDocument() throws XMLStreamException {
+      writePending(false);
+      delegate.writeEndDocument();
+    }
+
+    @Override
+    public void close() throws XMLStreamException {
+      writePending(false);
+      delegate.close();
+    }
+
+    @Override
+    public void flush() throws XMLStreamException {
+      writePending(false);
+      // completes the tag of a preceding empty element before raw bytes follow
+      delegate.writeCharacters("");
+      delegate.flush();
+    }
+
+    @Override
+    public void writeAttribute(String localName, String value) throws XMLStreamException {
+      writeAttribute("", "", localName, value);
+    }
+
+    @Override
+    public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+      if (pendingElement.isEmpty()) {
+        delegate.writeAttribute(prefix, namespaceURI, localName, value);
+      } else {
+        pendingElement.add(prefix);
+        pendingElement.add(namespaceURI);
+        pendingElement.add(localName);
+        pendingElement.add(value);
+      }
+    }
+
+    @Override
+    public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+      String prefix = namespaceURI.isEmpty() ? "" : getPrefix(namespaceURI);
+      writeAttribute(prefix == null ? "" : prefix, namespaceURI, localName, value);
+    }
+
+    @Override
+    public void writeComment(String data) throws XMLStreamException {
+      writePending(false);
+      delegate.writeComment(data);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target) throws XMLStreamException {
+      writePending(false);
+      delegate.writeProcessingInstruction(target);
+    }
+
+    @Override
+    public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+      writePending(false);
+      delegate.writeProcessingInstruction(target, data);
+    }
+
+    @Override
+    public void writeCData(String data) throws XMLStreamException {
+      writePending(false);
+      delegate.writeCData(data);
+    }
+
+    @Override
+    public void writeDTD(String dtd) throws XMLStreamException {
+      writePending(false);
+      delegate.writeDTD(dtd);
+    }
+
+    @Override
+    public void writeEntityRef(String name) throws XMLStreamException {
+      writePending(false);
+      delegate.writeEntityRef(name);
+    }
+
+    @Override
+    public void writeStartDocument() throws XMLStreamException {
+      delegate.writeStartDocument();
+    }
+
+    @Override
+    public void writeStartDocument(String version) throws XMLStreamException {
+      delegate.writeStartDocument(version);
+    }
+
+    @Override
+    public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+      delegate.writeStartDocument(encoding, version);
+    }
+
+    @Override
+    public void writeCharacters(String text) throws XMLStreamException {
+      writePending(false);
+      delegate.writeCharacters(text);
+    }
+
+    @Override
+    public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+      writePending(false);
+      delegate.writeCharacters(text, start, len);
+    }
+
+    @Override
+    public String getPrefix(String uri) throws XMLStreamException {
+      return delegate.getPrefix(uri);
+    }
+
+    @Override
+    public void setPrefix(String prefix, String uri) throws XMLStreamException {
+      delegate.setPrefix(prefix, uri);
+    }
+
+    @Override
+    public void setDefaultNamespace(String uri) throws XMLStreamException {
+      delegate.setDefaultNamespace(uri);
+    }
+
+    @Override
+    public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+      delegate.setNamespaceContext(context);
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+      return delegate.getNamespaceContext();
+    }
+
+    @Override
+    public Object getProperty(String name) {
+      return delegate.getProperty(name);
+    }
+  }
+}
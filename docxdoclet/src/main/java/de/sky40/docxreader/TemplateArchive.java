@@ -0,0 +1,357 @@
+package de.sky40.docxreader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Gives raw access to the entries of a template zip file. The compressed data
+ * of an entry can be transferred to another channel without inflating it.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class TemplateArchive implements Closeable {
+
+  private static final int SIG_END_OF_CENTRAL_DIR = 0x06054b50;
+  private static final int SIG_CENTRAL_DIR_HEADER = 0x02014b50;
+  private static final int SIG_LOCAL_HEADER = 0x04034b50;
+
+  private static final int END_OF_CENTRAL_DIR_SIZE = 22;
+  private static final int LOCAL_HEADER_SIZE = 30;
+
+  private static final String CONTENT_TYPES = "[Content_Types].xml";
+
+  /**
+   * The channel of the template file.
+   */
+  private final FileChannel channel;
+
+  /**
+   * The entries in the order of the central directory.
+   */
+  private final List<Entry> entries;
+
+  private TemplateArchive(FileChannel channel) throws IOException {
+    this.channel = channel;
+    this.entries = Collections.unmodifiableList(readCentralDirectory());
+  }
+
+  /**
+   * Opens a template file.
+   *
+   * @param file The template file.
+   * @return The opened archive. Must be closed by the caller.
+   * @throws IOException If the file can not be read or is no zip file.
+   */
+  public static TemplateArchive open(File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      return new TemplateArchive(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets all entries of the archive.
+   *
+   * @return The entries in the order of the central directory.
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Gets all entries sorted by name, independent of the order the template was
+   * written in. "[Content_Types].xml" comes first, as some readers expect it
+   * at the start of the package.
+   *
+   * @return The sorted entries.
+   */
+  public List<Entry> getEntriesByName() {
+    List<Entry> sorted = new ArrayList<>(entries);
+    sorted.sort((a, b) -> {
+      boolean isContentTypesA = a.getName().equals(CONTENT_TYPES);
+      boolean isContentTypesB = b.getName().equals(CONTENT_TYPES);
+      if (isContentTypesA != isContentTypesB) {
+        return isContentTypesA ? -1 : 1;
+      }
+      return a.getName().compareTo(b.getName());
+    });
+    return sorted;
+  }
+
+  /**
+   * Finds an entry by name.
+   *
+   * @param name The name of the entry (e.g. "word/document.xml").
+   * @return The entry or null if the archive contains no such entry.
+   */
+  public Entry findEntry(String name) {
+    for (Entry entry : entries) {
+      if (entry.getName().equals(name)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Transfers the compressed data of an entry to a channel. Uses zero-copy
+   * transfer if the target channel supports it.
+   *
+   * @param entry The entry to transfer.
+   * @param target The channel to write to.
+   * @throws IOException If reading or writing fails.
+   */
+  public void transferData(Entry entry, WritableByteChannel target) throws IOException {
+    long position = entry.getDataOffset();
+    long remaining = entry.getCompressedSize();
+    while (0 < remaining) {
+      long transferred = channel.transferTo(position, remaining, target);
+      if (transferred <= 0) {
+        throw new ZipException("unexpected end of data in " + entry.getName());
+      }
+      position += transferred;
+      remaining -= transferred;
+    }
+  }
+
+  /**
+   * Opens a stream reading the uncompressed content of an entry.
+   *
+   * @param entry The entry to read.
+   * @return The stream, valid as long as the archive is open.
+   * @throws ZipException If the entry is neither stored nor deflated.
+   */
+  public InputStream openEntry(Entry entry) throws ZipException {
+    if (entry.getMethod() == ZipEntry.STORED) {
+      return new DataStream(entry, false);
+    }
+    if (entry.getMethod() == ZipEntry.DEFLATED) {
+      return new InflaterInputStream(new DataStream(entry, true), new Inflater(true)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            // the stream ends only inflaters it created itself
+            inf.end();
+          }
+        }
+      };
+    }
+    throw new ZipException("unsupported compression method " + entry.getMethod() + " of " + entry.getName());
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Reads the central directory and the data offsets of all entries.
+   *
+   * @return The entries.
+   * @throws IOException If the file is no valid zip file.
+   */
+  private List<Entry> readCentralDirectory() throws IOException {
+    // the end of central directory record is followed by a comment of up to 64k
+    long size = channel.size();
+    int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIR_SIZE + 0xFFFF);
+    ByteBuffer tail = read(size - tailLength, tailLength);
+    int eocd = -1;
+    for (int i = tailLength - END_OF_CENTRAL_DIR_SIZE; 0 <= i; i--) {
+      if (tail.getInt(i) == SIG_END_OF_CENTRAL_DIR) {
+        eocd = i;
+        break;
+      }
+    }
+    if (eocd < 0) {
+      throw new ZipException("no zip file (end of central directory not found)");
+    }
+    int entryCount = tail.getShort(eocd + 10) & 0xFFFF;
+    long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+    long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+
+    ByteBuffer directory = read(directoryOffset, (int) directorySize);
+    List<Entry> result = new ArrayList<>(entryCount);
+    int pos = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (directory.getInt(pos) != SIG_CENTRAL_DIR_HEADER) {
+        throw new ZipException("invalid central directory header");
+      }
+      int flags = directory.getShort(pos + 8) & 0xFFFF;
+      int method = directory.getShort(pos + 10) & 0xFFFF;
+      int dosTime = directory.getInt(pos + 12);
+      int crc = directory.getInt(pos + 16);
+      long compressedSize = directory.getInt(pos + 20) & 0xFFFFFFFFL;
+      long uncompressedSize = directory.getInt(pos + 24) & 0xFFFFFFFFL;
+      int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+      int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+      int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+      long localHeaderOffset = directory.getInt(pos + 42) & 0xFFFFFFFFL;
+      byte[] nameBytes = new byte[nameLength];
+      ((Buffer) directory).position(pos + 46);
+      directory.get(nameBytes);
+      String name = new String(nameBytes, (flags & ZipPackageWriter.FLAG_UTF8) != 0
+              ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1);
+
+      ByteBuffer localHeader = read(localHeaderOffset, LOCAL_HEADER_SIZE);
+      if (localHeader.getInt(0) != SIG_LOCAL_HEADER) {
+        throw new ZipException("invalid local header of " + name);
+      }
+      long dataOffset = localHeaderOffset + LOCAL_HEADER_SIZE
+              + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+
+      result.add(new Entry(name, flags, method, dosTime, crc, compressedSize, uncompressedSize, dataOffset));
+      pos += 46 + nameLength + extraLength + commentLength;
+    }
+    return result;
+  }
+
+  /**
+   * Reads a block of the file.
+   *
+   * @param position The position in the file.
+   * @param length The number of bytes to read.
+   * @return A little endian buffer with the bytes.
+   * @throws IOException If the file is too short.
+   */
+  private ByteBuffer read(long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new ZipException("unexpected end of zip file");
+      }
+    }
+    // cast for Java 8, which has no covariant ByteBuffer.flip()
+    ((Buffer) buffer).flip();
+    return buffer;
+  }
+
+  /**
+   * Reads the data of an entry from the channel at its position, so several
+   * entries can be read at the same time.
+   */
+  private final class DataStream extends InputStream {
+
+    private long position;
+    private final long end;
+
+    /**
+     * The dummy byte the inflater needs after the deflated data is pending.
+     */
+    private boolean isPaddingPending;
+
+    DataStream(Entry entry, boolean isDeflated) {
+      this.position = entry.getDataOffset();
+      this.end = position + entry.getCompressedSize();
+      this.isPaddingPending = isDeflated;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (end <= position) {
+        if (isPaddingPending) {
+          isPaddingPending = false;
+          b[off] = 0;
+          return 1;
+        }
+        return -1;
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - position));
+      int n = channel.read(buffer, position);
+      if (n < 0) {
+        throw new ZipException("unexpected end of zip file");
+      }
+      position += n;
+      return n;
+    }
+  }
+
+  /**
+   * An entry of the archive.
+   *
+   * Immutable type.
+   */
+  public static final class Entry {
+
+    private final String name;
+    private final int flags;
+    private final int method;
+    private final int dosTime;
+    private final int crc;
+    private final long compressedSize;
+    private final long uncompressedSize;
+    private final long dataOffset;
+
+    Entry(String name, int flags, int method, int dosTime, int crc, long compressedSize, long uncompressedSize, long dataOffset) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.uncompressedSize = uncompressedSize;
+      this.dataOffset = dataOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getFlags() {
+      return flags;
+    }
+
+    public int getMethod() {
+      return method;
+    }
+
+    public int getDosTime() {
+      return dosTime;
+    }
+
+    public int getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getUncompressedSize() {
+      return uncompressedSize;
+    }
+
+    public long getDataOffset() {
+      return dataOffset;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package de.sky40.docxreader;
+
+import de.sky40.docxreader.domain.Style;
+import de.sky40.docxreader.domain.StyleName;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.adapters.HexBinaryAdapter;
+import org.docx4j.XmlUtils;
+import org.docx4j.wml.RPr;
+
+/**
+ * A cache on disk for the styles extracted from templates. The cache entries
+ * are keyed by the SHA-256 hash of the template file, so a changed template
+ * is never served from the cache.
+ *
+ * The template parts themselves are not cached: docx4j loads parts lazily and
+ * copies untouched parts from the template on save.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class TemplateCache {
+
+  /**
+   * The version of the cache file format. Entries of other versions are
+   * ignored.
+   */
+  private static final String FORMAT_VERSION = "1";
+
+  private static final String KEY_FORMAT = "format";
+  private static final String PREFIX_STYLE_ID = "styleId:";
+  private static final String PREFIX_RUN_STYLE = "runStyle:";
+
+  /**
+   * The directory of the cache files.
+   */
+  private final File directory;
+
+  private int hits = 0;
+  private int misses = 0;
+
+  /**
+   * Creates a cache in a directory. The directory is created on first write.
+   *
+   * @param directory The directory of the cache files.
+   */
+  public TemplateCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Calculates the cache key of template content.
+   *
+   * @param content The bytes of the template file.
+   * @return The SHA-256 hash of the content as hex string.
+   */
+  public static String keyOf(byte[] content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return new HexBinaryAdapter().marshal(digest.digest(content)).toLowerCase();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not supported", e);
+    }
+  }
+
+  /**
+   * Loads the styles of a template.
+   *
+   * @param key The key of the template.
+   * @return The styles or null if the cache has no (valid) entry for the key.
+   */
+  public Map<StyleName, Style> load(String key) {
+    File file = fileOf(key);
+    if (!file.isFile()) {
+      misses++;
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      properties.load(in);
+      if (!FORMAT_VERSION.equals(properties.getProperty(KEY_FORMAT))) {
+        misses++;
+        return null;
+      }
+      Map<StyleName, Style> styles = new HashMap<>();
+      for (String keyword : properties.stringPropertyNames()) {
+        if (!KEY_FORMAT.equals(keyword)) {
+          styles.put(StyleName.with(keyword), toStyle(properties.getProperty(keyword)));
+        }
+      }
+      hits++;
+      return styles;
+    } catch (IOException | JAXBException | IllegalArgumentException e) {
+      Log.warn(() -> "Ignoring unreadable template cache entry " + file + ": " + e.getMessage());
+      misses++;
+      return null;
+    }
+  }
+
+  /**
+   * Stores the styles of a template. Errors are logged only, as the cache is
+   * not required for the document creation.
+   *
+   * @param key The key of the template.
+   * @param styles The styles to store.
+   */
+  public void store(String key, Map<StyleName, Style> styles) {
+    Properties properties = new Properties();
+    properties.setProperty(KEY_FORMAT, FORMAT_VERSION);
+    for (Map.Entry<StyleName, Style> entry : styles.entrySet()) {
+      if (entry.getValue() != null) {
+        properties.setProperty(entry.getKey().getName(), fromStyle(entry.getValue()));
+      }
+    }
+    File file = fileOf(key);
+    try {
+      Files.createDirectories(directory.toPath());
+      File tempFile = File.createTempFile(key, ".tmp", directory);
+      boolean isMoved = false;
+      try {
+        try (OutputStream out = Files.newOutputStream(tempFile.toPath())) {
+          properties.store(out, "docxdoclet template styles");
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        isMoved = true;
+      } finally {
+        if (!isMoved) {
+          Files.deleteIfExists(tempFile.toPath());
+        }
+      }
+    } catch (IOException e) {
+      Log.warn(() -> "Could not write template cache entry " + file + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Gets a report on the cache usage.
+   *
+   * @return A line with the number of cache hits and misses.
+   */
+  public String getReport() {
+    return "template cache " + directory + ": " + hits + " hit(s), " + misses + " miss(es)";
+  }
+
+  public int getHits() {
+    return hits;
+  }
+
+  public int getMisses() {
+    return misses;
+  }
+
+  private File fileOf(String key) {
+    return new File(directory, key + ".properties");
+  }
+
+  private static String fromStyle(Style style) {
+    if (style.getStyleId() != null) {
+      return PREFIX_STYLE_ID + style.getStyleId();
+    }
+    return PREFIX_RUN_STYLE + XmlUtils.marshaltoString(style.getRunStyle(), true, false);
+  }
+
+  private static Style toStyle(String value) throws JAXBException {
+    if (value.startsWith(PREFIX_STYLE_ID)) {
+      return new Style(value.substring(PREFIX_STYLE_ID.length()));
+    }
+    if (value.startsWith(PREFIX_RUN_STYLE)) {
+      return new Style((RPr) XmlUtils.unmarshalString(value.substring(PREFIX_RUN_STYLE.length())));
+    }
+    throw new IllegalArgumentException("unknown style value " + value);
+  }
+}
@@ -0,0 +1,98 @@
+package de.sky40.docxreader;
+
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * The compression of the entries written by a {@link ZipPackageWriter}:
+ * stored without compression or deflated with a level, on one thread or in
+ * independent blocks on several threads.
+ *
+ * Immutable.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public final class ZipCompression {
+
+  /**
+   * The size of the blocks deflated in parallel.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+  /**
+   * Deflated with the default level on one thread.
+   */
+  public static final ZipCompression DEFAULT = deflated(Deflater.DEFAULT_COMPRESSION, 1);
+
+  private final int method;
+  private final int level;
+  private final int threads;
+  private final int blockSize;
+
+  private ZipCompression(int method, int level, int threads, int blockSize) {
+    this.method = method;
+    this.level = level;
+    this.threads = threads;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Creates a compression storing the entries uncompressed, e.g. for fast
+   * previews.
+   *
+   * @return The compression.
+   */
+  public static ZipCompression stored() {
+    return new ZipCompression(ZipEntry.STORED, 0, 1, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a deflate compression.
+   *
+   * @param level The level from 0 (no compression) to 9 (best compression)
+   * or {@link Deflater#DEFAULT_COMPRESSION}.
+   * @param threads The number of threads deflating independent blocks of an
+   * entry, 1 to deflate on the writing thread.
+   * @return The compression.
+   */
+  public static ZipCompression deflated(int level, int threads) {
+    if ((level < 0 || 9 < level) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level " + level);
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads " + threads);
+    }
+    return new ZipCompression(ZipEntry.DEFLATED, level, threads, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * The zip method of the entries.
+   *
+   * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+   */
+  public int getMethod() {
+    return method;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Indicates if entries are deflated in independent blocks on several
+   * threads.
+   *
+   * @return true if more than one thread is used.
+   */
+  public boolean isParallel() {
+    return method == ZipEntry.DEFLATED && 1 < threads;
+  }
+}
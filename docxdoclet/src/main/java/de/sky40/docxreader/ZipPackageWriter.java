@@ -0,0 +1,681 @@
+package de.sky40.docxreader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes the zip container of a docx package. In contrast to
+ * {@link java.util.zip.ZipOutputStream} entries of a template can be copied
+ * with their compressed data as is, so untouched parts are neither inflated
+ * nor deflated again.
+ *
+ * New entries are compressed as given by a {@link ZipCompression}. In
+ * parallel mode an entry is split into blocks which are deflated on a thread
+ * pool, like pigz does: every block is primed with the last 32 KB of the
+ * previous block and ends with a sync flush, so the concatenated blocks form
+ * a single standard deflate stream.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public class ZipPackageWriter implements PackageWriter {
+
+  /**
+   * General purpose flag: sizes and crc follow the data in a data descriptor.
+   */
+  static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+  /**
+   * General purpose flag: the entry name is encoded in UTF-8.
+   */
+  static final int FLAG_UTF8 = 0x800;
+
+  private static final int SIG_LOCAL_HEADER = 0x04034b50;
+  private static final int SIG_DATA_DESCRIPTOR = 0x08074b50;
+  private static final int SIG_CENTRAL_DIR_HEADER = 0x02014b50;
+  private static final int SIG_END_OF_CENTRAL_DIR = 0x06054b50;
+
+  private static final int VERSION_NEEDED = 20;
+  private static final long MAX_ZIP32 = 0xFFFFFFFFL;
+
+  /**
+   * The size of the deflate window, the dictionary of a block.
+   */
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  /**
+   * A time for reproducible packages. Times before 1980 are written as
+   * 1980-01-01 00:00, the earliest time of the zip format, in every time
+   * zone.
+   */
+  public static final long REPRODUCIBLE_TIME = 0;
+
+  /**
+   * The channel to write the zip to.
+   */
+  private final WritableByteChannel out;
+
+  private final ZipCompression compression;
+
+  /**
+   * The threads deflating blocks in parallel mode, created with the first
+   * entry.
+   */
+  private ExecutorService deflaters;
+
+  /**
+   * The time spent deflating, summed over all threads.
+   */
+  private final AtomicLong compressionNanos = new AtomicLong();
+
+  /**
+   * The entries written so far, for the central directory.
+   */
+  private final List<WrittenEntry> writtenEntries = new ArrayList<>();
+
+  /**
+   * The number of bytes written to the channel.
+   */
+  private long position = 0;
+
+  /**
+   * An entry is currently written via an entry stream.
+   */
+  private boolean isEntryOpen = false;
+
+  private boolean isFinished = false;
+
+  /**
+   * The time of all entries in MS-DOS format, -1 to write new entries with
+   * the current time and to copy the time of template entries.
+   */
+  private int fixedDosTime = -1;
+
+  /**
+   * Creates a zip writer deflating new entries on the writing thread.
+   *
+   * @param out The channel to write to. Closed when this writer is closed.
+   */
+  public ZipPackageWriter(WritableByteChannel out) {
+    this(out, ZipCompression.DEFAULT);
+  }
+
+  /**
+   * Creates a zip writer.
+   *
+   * @param out The channel to write to. Closed when this writer is closed.
+   * @param compression The compression of new entries.
+   */
+  public ZipPackageWriter(WritableByteChannel out, ZipCompression compression) {
+    this.out = out;
+    this.compression = compression;
+  }
+
+  /**
+   * Sets the same time for all entries written afterwards, e.g. for
+   * reproducible packages.
+   *
+   * @param millis The time in milliseconds since the epoch, e.g.
+   * {@link #REPRODUCIBLE_TIME}.
+   */
+  public void setFixedTime(long millis) {
+    this.fixedDosTime = toDosTime(millis);
+  }
+
+  /**
+   * Copies an entry of a template without decompressing it.
+   *
+   * @param archive The archive containing the entry.
+   * @param entry The entry to copy.
+   * @throws IOException If reading or writing fails.
+   */
+  @Override
+  public void copyEntry(TemplateArchive archive, TemplateArchive.Entry entry) throws IOException {
+    checkNoOpenEntry();
+    // sizes are known, so the copy does not need a data descriptor
+    int flags = entry.getFlags() & ~FLAG_DATA_DESCRIPTOR;
+    int dosTime = fixedDosTime != -1 ? fixedDosTime : entry.getDosTime();
+    WrittenEntry written = new WrittenEntry(entry.getName(), flags, entry.getMethod(), dosTime, position);
+    written.crc = entry.getCrc();
+    written.compressedSize = entry.getCompressedSize();
+    written.uncompressedSize = entry.getUncompressedSize();
+    writeLocalHeader(written);
+    archive.transferData(entry, out);
+    position += entry.getCompressedSize();
+    writtenEntries.add(written);
+  }
+
+  /**
+   * Starts a new entry, compressed as given on creation. The entry is complete
+   * when the returned stream is closed.
+   *
+   * @param name The name of the entry (e.g. "word/document.xml").
+   * @return The stream to write the uncompressed content of the entry to.
+   * @throws IOException If writing fails.
+   */
+  @Override
+  public OutputStream openEntry(String name) throws IOException {
+    checkNoOpenEntry();
+    int dosTime = fixedDosTime != -1 ? fixedDosTime : toDosTime(System.currentTimeMillis());
+    if (compression.getMethod() == ZipEntry.STORED) {
+      WrittenEntry written = new WrittenEntry(name, FLAG_UTF8, ZipEntry.STORED, dosTime, position);
+      isEntryOpen = true;
+      return new StoredEntryStream(written);
+    }
+    WrittenEntry written = new WrittenEntry(name, FLAG_DATA_DESCRIPTOR | FLAG_UTF8, ZipEntry.DEFLATED, dosTime, position);
+    writeLocalHeader(written);
+    isEntryOpen = true;
+    if (compression.isParallel()) {
+      if (deflaters == null) {
+        deflaters = Executors.newFixedThreadPool(compression.getThreads(), runnable -> {
+          Thread thread = new Thread(runnable, "docxdoclet-deflate");
+          thread.setDaemon(true);
+          return thread;
+        });
+      }
+      return new ParallelDeflatingEntryStream(written);
+    }
+    return new DeflatingEntryStream(written);
+  }
+
+  /**
+   * Gets the time spent compressing entries.
+   *
+   * @return The time in nanoseconds, summed over all deflating threads.
+   */
+  @Override
+  public long getCompressionNanos() {
+    return compressionNanos.get();
+  }
+
+  /**
+   * Writes the central directory. No more entries can be added afterwards.
+   *
+   * @throws IOException If writing fails.
+   */
+  public void finish() throws IOException {
+    if (isFinished) {
+      return;
+    }
+    checkNoOpenEntry();
+    long directoryOffset = position;
+    for (WrittenEntry entry : writtenEntries) {
+      byte[] name = entry.name.getBytes(entry.charset());
+      ByteBuffer header = buffer(46 + name.length);
+      header.putInt(SIG_CENTRAL_DIR_HEADER);
+      header.putShort((short) VERSION_NEEDED);
+      header.putShort((short) VERSION_NEEDED);
+      header.putShort((short) entry.flags);
+      header.putShort((short) entry.method);
+      header.putInt(entry.dosTime);
+      header.putInt(entry.crc);
+      header.putInt((int) entry.compressedSize);
+      header.putInt((int) entry.uncompressedSize);
+      header.putShort((short) name.length);
+      header.putShort((short) 0); // extra field length
+      header.putShort((short) 0); // comment length
+      header.putShort((short) 0); // disk number
+      header.putShort((short) 0); // internal attributes
+      header.putInt(0); // external attributes
+      header.putInt((int) entry.localHeaderOffset);
+      header.put(name);
+      write(header);
+    }
+    long directorySize = position - directoryOffset;
+    if (0xFFFF < writtenEntries.size() || MAX_ZIP32 < position) {
+      throw new ZipException("package too large for zip format without zip64 extensions");
+    }
+    ByteBuffer end = buffer(22);
+    end.putInt(SIG_END_OF_CENTRAL_DIR);
+    end.putShort((short) 0);
+    end.putShort((short) 0);
+    end.putShort((short) writtenEntries.size());
+    end.putShort((short) writtenEntries.size());
+    end.putInt((int) directorySize);
+    end.putInt((int) directoryOffset);
+    end.putShort((short) 0);
+    write(end);
+    isFinished = true;
+  }
+
+  /**
+   * Finishes the zip and closes the channel.
+   *
+   * @throws IOException If writing fails.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      finish();
+    } finally {
+      if (deflaters != null) {
+        deflaters.shutdownNow();
+      }
+      out.close();
+    }
+  }
+
+  private void checkNoOpenEntry() {
+    if (isEntryOpen) {
+      throw new IllegalStateException("previous entry has not been closed");
+    }
+    if (isFinished) {
+      throw new IllegalStateException("zip has already been finished");
+    }
+  }
+
+  private void writeLocalHeader(WrittenEntry entry) throws IOException {
+    if (MAX_ZIP32 < entry.localHeaderOffset) {
+      throw new ZipException("package too large for zip format without zip64 extensions");
+    }
+    byte[] name = entry.name.getBytes(entry.charset());
+    boolean hasDescriptor = (entry.flags & FLAG_DATA_DESCRIPTOR) != 0;
+    ByteBuffer header = buffer(30 + name.length);
+    header.putInt(SIG_LOCAL_HEADER);
+    header.putShort((short) VERSION_NEEDED);
+    header.putShort((short) entry.flags);
+    header.putShort((short) entry.method);
+    header.putInt(entry.dosTime);
+    header.putInt(hasDescriptor ? 0 : entry.crc);
+    header.putInt(hasDescriptor ? 0 : (int) entry.compressedSize);
+    header.putInt(hasDescriptor ? 0 : (int) entry.uncompressedSize);
+    header.putShort((short) name.length);
+    header.putShort((short) 0);
+    header.put(name);
+    write(header);
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    // cast for Java 8, which has no covariant ByteBuffer.flip()
+    ((Buffer) buffer).flip();
+    while (buffer.hasRemaining()) {
+      position += out.write(buffer);
+    }
+  }
+
+  private static ByteBuffer buffer(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Converts a time to the MS-DOS date and time format of zip files.
+   *
+   * @param millis The time in milliseconds since the epoch.
+   * @return The time in MS-DOS format.
+   */
+  static int toDosTime(long millis) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(millis);
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    return (year - 1980) << 25
+            | (calendar.get(Calendar.MONTH) + 1) << 21
+            | calendar.get(Calendar.DAY_OF_MONTH) << 16
+            | calendar.get(Calendar.HOUR_OF_DAY) << 11
+            | calendar.get(Calendar.MINUTE) << 5
+            | calendar.get(Calendar.SECOND) >> 1;
+  }
+
+  /**
+   * Completes a deflated entry with its data descriptor.
+   *
+   * @param entry The entry.
+   * @param crc The checksum of the uncompressed content.
+   * @param dataOffset The position of the compressed data.
+   * @param size The size of the uncompressed content.
+   * @throws IOException If writing fails.
+   */
+  private void closeDeflatedEntry(WrittenEntry entry, CRC32 crc, long dataOffset, long size) throws IOException {
+    entry.crc = (int) crc.getValue();
+    entry.compressedSize = position - dataOffset;
+    entry.uncompressedSize = size;
+    if (MAX_ZIP32 < entry.compressedSize || MAX_ZIP32 < size) {
+      throw new ZipException("entry " + entry.name + " too large for zip format without zip64 extensions");
+    }
+    ByteBuffer descriptor = buffer(16);
+    descriptor.putInt(SIG_DATA_DESCRIPTOR);
+    descriptor.putInt(entry.crc);
+    descriptor.putInt((int) entry.compressedSize);
+    descriptor.putInt((int) entry.uncompressedSize);
+    write(descriptor);
+    writtenEntries.add(entry);
+    isEntryOpen = false;
+  }
+
+  /**
+   * The data of a written entry needed for the central directory.
+   */
+  private static final class WrittenEntry {
+
+    private final String name;
+    private final int flags;
+    private final int method;
+    private final int dosTime;
+    private final long localHeaderOffset;
+    private int crc;
+    private long compressedSize;
+    private long uncompressedSize;
+
+    WrittenEntry(String name, int flags, int method, int dosTime, long localHeaderOffset) {
+      this.name = name;
+      this.flags = flags;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    Charset charset() {
+      return (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+    }
+  }
+
+  /**
+   * Deflates the content of an entry and writes the data descriptor on close.
+   */
+  private final class DeflatingEntryStream extends OutputStream {
+
+    private final WrittenEntry entry;
+    private final Deflater deflater = new Deflater(compression.getLevel(), true);
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private final long dataOffset;
+    private long size = 0;
+    private boolean isClosed = false;
+
+    DeflatingEntryStream(WrittenEntry entry) {
+      this.entry = entry;
+      this.dataOffset = position;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (isClosed) {
+        throw new IOException("entry stream closed");
+      }
+      crc.update(b, off, len);
+      size += len;
+      deflater.setInput(b, off, len);
+      while (!deflater.needsInput()) {
+        deflate();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+      try {
+        deflater.finish();
+        while (!deflater.finished()) {
+          deflate();
+        }
+      } finally {
+        deflater.end();
+      }
+      closeDeflatedEntry(entry, crc, dataOffset, size);
+    }
+
+    private void deflate() throws IOException {
+      long start = System.nanoTime();
+      int length = deflater.deflate(buffer.array(), 0, buffer.capacity());
+      compressionNanos.addAndGet(System.nanoTime() - start);
+      if (0 < length) {
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).position(length);
+        ZipPackageWriter.this.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Deflates the content of an entry in independent blocks on the deflater
+   * threads. The blocks are written in order as soon as they are complete; at
+   * most two blocks per thread are pending, so a fast producer waits instead
+   * of buffering the whole entry.
+   */
+  private final class ParallelDeflatingEntryStream extends OutputStream {
+
+    private final WrittenEntry entry;
+    private final CRC32 crc = new CRC32();
+    private final long dataOffset;
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private byte[] block = new byte[compression.getBlockSize()];
+    private int blockLength = 0;
+
+    /**
+     * The end of the previous block, null for the first block.
+     */
+    private byte[] dictionary;
+    private long size = 0;
+    private boolean isClosed = false;
+
+    ParallelDeflatingEntryStream(WrittenEntry entry) {
+      this.entry = entry;
+      this.dataOffset = position;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (isClosed) {
+        throw new IOException("entry stream closed");
+      }
+      crc.update(b, off, len);
+      size += len;
+      while (0 < len) {
+        int n = Math.min(len, block.length - blockLength);
+        System.arraycopy(b, off, block, blockLength, n);
+        blockLength += n;
+        off += n;
+        len -= n;
+        if (blockLength == block.length) {
+          submitBlock(false);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+      try {
+        submitBlock(true);
+        while (!pendingBlocks.isEmpty()) {
+          writeBlock(pendingBlocks.removeFirst());
+        }
+      } finally {
+        for (Future<byte[]> pending : pendingBlocks) {
+          pending.cancel(true);
+        }
+      }
+      closeDeflatedEntry(entry, crc, dataOffset, size);
+    }
+
+    private void submitBlock(boolean isLast) throws IOException {
+      final byte[] input = block;
+      final int length = blockLength;
+      final byte[] blockDictionary = dictionary;
+      pendingBlocks.addLast(deflaters.submit(() -> deflateBlock(input, length, blockDictionary, isLast)));
+      if (!isLast) {
+        dictionary = Arrays.copyOfRange(input, Math.max(0, length - DICTIONARY_SIZE), length);
+        block = new byte[compression.getBlockSize()];
+        blockLength = 0;
+      }
+      while (2 * compression.getThreads() < pendingBlocks.size()) {
+        writeBlock(pendingBlocks.removeFirst());
+      }
+    }
+
+    private void writeBlock(Future<byte[]> pending) throws IOException {
+      byte[] deflated;
+      try {
+        deflated = pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted while deflating " + entry.name);
+      } catch (ExecutionException e) {
+        throw new IOException("Error deflating " + entry.name, e.getCause());
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(deflated);
+      ((Buffer) buffer).position(deflated.length);
+      ZipPackageWriter.this.write(buffer);
+    }
+
+    /**
+     * Deflates a block. A block other than the last ends with a sync flush,
+     * so it ends on a byte boundary and the next block can be appended.
+     */
+    private byte[] deflateBlock(byte[] input, int length, byte[] blockDictionary, boolean isLast) {
+      long start = System.nanoTime();
+      Deflater deflater = new Deflater(compression.getLevel(), true);
+      try {
+        if (blockDictionary != null) {
+          deflater.setDictionary(blockDictionary);
+        }
+        deflater.setInput(input, 0, length);
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(length / 2 + 64);
+        byte[] buffer = new byte[64 * 1024];
+        if (isLast) {
+          deflater.finish();
+          while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+          }
+        } else {
+          int n;
+          do {
+            n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            deflated.write(buffer, 0, n);
+          } while (n == buffer.length);
+        }
+        return deflated.toByteArray();
+      } finally {
+        deflater.end();
+        compressionNanos.addAndGet(System.nanoTime() - start);
+      }
+    }
+  }
+
+  /**
+   * Stores the content of an entry uncompressed. The sizes and the crc are
+   * needed before the data, as readers do not support data descriptors on
+   * stored entries: on a seekable channel the local header is patched after
+   * the data, otherwise the content is buffered.
+   */
+  private final class StoredEntryStream extends OutputStream {
+
+    private final WrittenEntry entry;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The buffered content if the channel is not seekable, else null.
+     */
+    private final ByteArrayOutputStream buffered;
+    private long size = 0;
+    private boolean isClosed = false;
+
+    StoredEntryStream(WrittenEntry entry) throws IOException {
+      this.entry = entry;
+      if (out instanceof SeekableByteChannel) {
+        this.buffered = null;
+        writeLocalHeader(entry);
+      } else {
+        this.buffered = new ByteArrayOutputStream();
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (isClosed) {
+        throw new IOException("entry stream closed");
+      }
+      crc.update(b, off, len);
+      size += len;
+      if (buffered != null) {
+        buffered.write(b, off, len);
+      } else {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len).slice();
+        ((Buffer) buffer).position(len);
+        ZipPackageWriter.this.write(buffer);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (isClosed) {
+        return;
+      }
+      isClosed = true;
+      entry.crc = (int) crc.getValue();
+      entry.compressedSize = size;
+      entry.uncompressedSize = size;
+      if (MAX_ZIP32 < size) {
+        throw new ZipException("entry " + entry.name + " too large for zip format without zip64 extensions");
+      }
+      if (buffered != null) {
+        writeLocalHeader(entry);
+        ByteBuffer buffer = ByteBuffer.wrap(buffered.toByteArray());
+        ((Buffer) buffer).position(buffer.limit());
+        ZipPackageWriter.this.write(buffer);
+      } else {
+        // crc and sizes are at offset 14 of the local header
+        SeekableByteChannel channel = (SeekableByteChannel) out;
+        long end = channel.position();
+        ByteBuffer sizes = buffer(12);
+        sizes.putInt(entry.crc);
+        sizes.putInt((int) size);
+        sizes.putInt((int) size);
+        ((Buffer) sizes).flip();
+        channel.position(end - (position - entry.localHeaderOffset) + 14);
+        while (sizes.hasRemaining()) {
+          channel.write(sizes);
+        }
+        channel.position(end);
+      }
+      writtenEntries.add(entry);
+      isEntryOpen = false;
+    }
+  }
+}
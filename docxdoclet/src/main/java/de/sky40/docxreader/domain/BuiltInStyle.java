@@ -0,0 +1,48 @@
+package de.sky40.docxreader.domain;
+
+/**
+ * The styles the doclet expects in every template. Each style is taken from
+ * the paragraph containing its keyword.
+ *
+ * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
+ */
+public enum BuiltInStyle {
+
+  PACKAGE(StyleName.PACKAGE),
+  CLASS(StyleName.CLASS),
+  METHOD(StyleName.METHOD),
+  SIGNATURE(StyleName.SIGNATURE),
+  COMMENT(StyleName.COMMENT),
+  HEADING(StyleName.HEADING),
+  MISSING(StyleName.MISSING);
+
+  private final String keyword;
+
+  private BuiltInStyle(String keyword) {
+    this.keyword = keyword;
+  }
+
+  /**
+   * The keyword marking the paragraph of the style in the template.
+   *
+   * @return The keyword in lower case.
+   */
+  public String getKeyword() {
+    return keyword;
+  }
+
+  /**
+   * Finds the built-in style of a keyword.
+   *
+   * @param keyword The keyword in lower case.
+   * @return The style or null if the keyword is no built-in style.
+   */
+  public static BuiltInStyle forKeyword(String keyword) {
+    for (BuiltInStyle style : values()) {
+      if (style.keyword.equals(keyword)) {
+        return style;
+      }
+    }
+    return null;
+  }
+}
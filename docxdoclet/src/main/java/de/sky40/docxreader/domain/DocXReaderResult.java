@@ -1,5 +1,10 @@
 package de.sky40.docxreader.domain;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.docx4j.openpackaging.packages.WordprocessingMLPackage;
 import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
@@ -7,27 +12,121 @@ import org.docx4j.openpackaging.parts.WordprocessingML.MainDocumentPart;
 /**
  * Class contains all necessary information to process a docx (template) file after the read in process.
  *
+ * The built-in styles are resolved once on creation and looked up by their
+ * ordinal. A built-in style missing in the template is reported by
+ * {@link #getUnresolvedStyles()} and resolved to {@link Style#UNSTYLED}.
+ *
  * @author Hendrik Stilke <Hendrik.Stilke@sky40.de>
  */
 public class DocXReaderResult {
 
   private final Map<StyleName, Style> styles;
 
+  /**
+   * The built-in styles by ordinal.
+   */
+  private final Style[] builtInStyles;
+
+  /**
+   * All other styles by their (interned) lower case name.
+   */
+  private final Map<String, Style> customStyles;
+
+  private final List<BuiltInStyle> unresolvedStyles;
+
   private final MainDocumentPart mainDoc;
   private final WordprocessingMLPackage packageML;
 
+  /**
+   * The template file the package was loaded from, may be null.
+   */
+  private final File templateFile;
+
+  /**
+   * The key of the template content, may be null.
+   */
+  private final String templateKey;
+
 
   public DocXReaderResult(WordprocessingMLPackage packageML, MainDocumentPart mainDoc, Map<StyleName, Style> styles) {
+    this(packageML, mainDoc, styles, null);
+  }
+
+  public DocXReaderResult(WordprocessingMLPackage packageML, MainDocumentPart mainDoc, Map<StyleName, Style> styles, File templateFile) {
+    this(packageML, mainDoc, styles, templateFile, null);
+  }
+
+  public DocXReaderResult(WordprocessingMLPackage packageML, MainDocumentPart mainDoc, Map<StyleName, Style> styles, File templateFile,
+          String templateKey) {
     this.packageML = packageML;
     this.mainDoc = mainDoc;
-    this.styles = styles;}
+    this.styles = styles;
+    this.templateFile = templateFile;
+    this.templateKey = templateKey;
+
+    this.builtInStyles = new Style[BuiltInStyle.values().length];
+    this.customStyles = new HashMap<>();
+    for (Map.Entry<StyleName, Style> entry : styles.entrySet()) {
+      String name = entry.getKey().getName().toLowerCase();
+      BuiltInStyle builtIn = BuiltInStyle.forKeyword(name);
+      if (builtIn != null) {
+        builtInStyles[builtIn.ordinal()] = entry.getValue();
+      } else {
+        customStyles.put(name.intern(), entry.getValue());
+      }
+    }
+    List<BuiltInStyle> unresolved = new ArrayList<>();
+    for (BuiltInStyle builtIn : BuiltInStyle.values()) {
+      if (builtInStyles[builtIn.ordinal()] == null) {
+        unresolved.add(builtIn);
+        builtInStyles[builtIn.ordinal()] = Style.UNSTYLED;
+      }
+    }
+    this.unresolvedStyles = Collections.unmodifiableList(unresolved);
+  }
+
+  /**
+   * Gets a built-in style.
+   *
+   * @param style The built-in style.
+   * @return The style, {@link Style#UNSTYLED} if the template has none.
+   */
+  public Style findStyle(BuiltInStyle style) {
+    return builtInStyles[style.ordinal()];
+  }
 
   public Style findStyle(StyleName name) {
-    return styles.get(name);
-  } 
-  
+    return findStyle(name.getName());
+  }
+
+  /**
+   * Find style with name "name" (ignoring case).
+   *
+   * @param name The name to find.
+   * @return The found style or null if not found.
+   */
   public Style findStyle(String name) {
-    return styles.get(StyleName.with(name));
+    String lowerCaseName = name.toLowerCase();
+    BuiltInStyle builtIn = BuiltInStyle.forKeyword(lowerCaseName);
+    return builtIn != null ? findStyle(builtIn) : customStyles.get(lowerCaseName);
+  }
+
+  /**
+   * The built-in styles the template has no paragraph for.
+   *
+   * @return The unresolved styles, empty if all styles were found.
+   */
+  public List<BuiltInStyle> getUnresolvedStyles() {
+    return unresolvedStyles;
+  }
+
+  /**
+   * All styles found in the template.
+   *
+   * @return The styles by name.
+   */
+  public Map<StyleName, Style> getStyles() {
+    return Collections.unmodifiableMap(styles);
   }
 
   public MainDocumentPart getMainDoc() {
@@ -38,4 +137,19 @@ public class DocXReaderResult {
     return packageML;
   }
 
+  public File getTemplateFile() {
+    return templateFile;
+  }
+
+  /**
+   * The key of the template content, computed by
+   * {@link de.sky40.docxreader.TemplateCache#keyOf(byte[])} when the template
+   * was read.
+   *
+   * @return The key or null if the template was not read from a file.
+   */
+  public String getTemplateKey() {
+    return templateKey;
+  }
+
 }
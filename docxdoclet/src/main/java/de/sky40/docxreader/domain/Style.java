@@ -10,6 +10,12 @@ import org.docx4j.wml.RPr;
  */
 public class Style {
 
+  /**
+   * The style of content which has no style, e.g. because the template
+   * lacks it.
+   */
+  public static final Style UNSTYLED = new Style((String) null);
+
   private final String styleId;
   private final RPr runStyle;
 
@@ -0,0 +1,40 @@
+package de.sky40.doclet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class BuilderOptionsTest {
+
+  @Test
+  public void numberOutOfRangeNamesTheRange() {
+    assertInvalid(new String[][]{{"-threads", "0"}},
+            "Invalid value '0' of option -threads, expected a number from 1 to 2147483647.");
+  }
+
+  @Test
+  public void invalidCompressionNamesTheValidValues() {
+    assertInvalid(new String[][]{{"-compression", "10"}},
+            "Invalid value '10' of option -compression, valid values are STORED, DEFAULT and the levels 0 to 9.");
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void getOptionReturnsTheGivenValueOrTheDefault() {
+    BuilderOptions options = new BuilderOptions(new String[][]{{"-level", "private"}, {"-threads", "4"}});
+    assertEquals("PRIVATE", options.getOption(BuilderOptions.OPTION_ACCESS_LEVEL));
+    assertEquals("4", options.getOption(BuilderOptions.OPTION_THREADS));
+    assertEquals("", options.getOption(BuilderOptions.OPTION_OUTPUT_FILENAME));
+    assertEquals("out.docx", options.getOption(BuilderOptions.OPTION_OUTPUT_FILENAME, "out.docx"));
+  }
+
+  private static void assertInvalid(String[][] options, String message) {
+    try {
+      new BuilderOptions(options);
+      fail("accepted " + options[0][0] + " " + options[0][1]);
+    } catch (IllegalArgumentException e) {
+      assertEquals(message, e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package de.sky40.doclet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class ClassFilterTest {
+
+  private static final List<String> NONE = Collections.emptyList();
+
+  @Test
+  public void wildcardsMatchWithinOneSegment() {
+    ClassFilter filter = new ClassFilter(Arrays.asList("com.foo.*Impl"), NONE, NONE);
+    assertNull(check(filter, "com.foo", "BarImpl"));
+    assertEquals(ClassFilter.Reason.NOT_INCLUDED, check(filter, "com.foo", "Bar"));
+    assertEquals(ClassFilter.Reason.NOT_INCLUDED, check(filter, "com.foo.bar", "BarImpl"));
+  }
+
+  @Test
+  public void anySegmentsMatchSubpackages() {
+    ClassFilter filter = new ClassFilter(Arrays.asList("com.foo.**"), Arrays.asList("**.internal.*"), NONE);
+    assertNull(check(filter, "com.foo", "Bar"));
+    assertNull(check(filter, "com.foo.bar.baz", "Bar"));
+    assertEquals(ClassFilter.Reason.NOT_INCLUDED, check(filter, "com", "Foo"));
+    assertEquals(ClassFilter.Reason.EXCLUDED, check(filter, "com.foo.internal", "Bar"));
+  }
+
+  @Test
+  public void nestedClassesMatchThePatternsOfTheirEnclosingClasses() {
+    ClassFilter filter = new ClassFilter(Arrays.asList("com.foo.*"), Arrays.asList("com.foo.Hidden"), NONE);
+    assertNull(check(filter, "com.foo", "Outer.Inner"));
+    assertNull(check(filter, "com.foo", "Outer.Inner.Innermost"));
+    assertEquals(ClassFilter.Reason.EXCLUDED, check(filter, "com.foo", "Hidden.Inner"));
+    assertEquals(ClassFilter.Reason.NOT_INCLUDED, check(filter, "com", "Foo.Inner"));
+  }
+
+  @Test
+  public void literalPatternsMatchNestedClasses() {
+    ClassFilter filter = new ClassFilter(Arrays.asList("com.foo.Outer.Inner"),
+            Arrays.asList("com.foo.Outer.Inner.*Test"), NONE);
+    assertNull(check(filter, "com.foo", "Outer.Inner"));
+    assertNull(check(filter, "com.foo", "Outer.Inner.Innermost"));
+    assertEquals(ClassFilter.Reason.NOT_INCLUDED, check(filter, "com.foo", "Outer"));
+    assertEquals(ClassFilter.Reason.NOT_INCLUDED, check(filter, "com.foo", "Outer.Other"));
+    assertEquals(ClassFilter.Reason.EXCLUDED, check(filter, "com.foo", "Outer.Inner.SlowTest"));
+  }
+
+  @Test
+  public void annotationsMatchByQualifiedOrSimpleName() {
+    ClassFilter filter = new ClassFilter(NONE, NONE, Arrays.asList("@Generated"));
+    assertEquals(ClassFilter.Reason.ANNOTATED,
+            filter.check("com.foo", "Bar", Arrays.asList("javax.annotation.Generated")));
+    assertNull(filter.check("com.foo", "Bar", Arrays.asList("com.foo.Other")));
+  }
+
+  private static ClassFilter.Reason check(ClassFilter filter, String packageName, String className) {
+    return filter.check(packageName, className, NONE);
+  }
+}
@@ -0,0 +1,145 @@
+package de.sky40.doclet;
+
+import com.sun.javadoc.ClassDoc;
+import com.sun.javadoc.ConstructorDoc;
+import com.sun.javadoc.FieldDoc;
+import com.sun.javadoc.MethodDoc;
+import com.sun.javadoc.ProgramElementDoc;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares iterating the members of a class with thousands of members via
+ * the {@link ClassMembers} snapshot with the access in every loop condition
+ * and element access it replaced. Like the javadoc model, the class builds
+ * and filters a new member array on every call of e.g.
+ * {@link ClassDoc#methods()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassMembersBenchmark {
+
+  /**
+   * The number of fields and of methods of the class.
+   */
+  @Param({"1000", "5000"})
+  public int members;
+
+  private ClassDoc classDoc;
+
+  @Setup
+  public void setUp() {
+    FieldDoc[] fields = createMembers(FieldDoc.class, members);
+    MethodDoc[] methods = createMembers(MethodDoc.class, members);
+    ConstructorDoc[] constructors = createMembers(ConstructorDoc.class, 1);
+    classDoc = (ClassDoc) Proxy.newProxyInstance(ClassDoc.class.getClassLoader(), new Class<?>[]{ClassDoc.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "interfaces":
+                  return new ClassDoc[0];
+                case "enumConstants":
+                  return new FieldDoc[0];
+                case "fields":
+                  return copyIncluded(fields);
+                case "constructors":
+                  return copyIncluded(constructors);
+                case "methods":
+                  return copyIncluded(methods);
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  @Benchmark
+  public void snapshot(Blackhole blackhole) {
+    ClassMembers snapshot = new ClassMembers(classDoc, false);
+    for (FieldDoc field : snapshot.getFields()) {
+      blackhole.consume(field);
+    }
+    for (ConstructorDoc constructor : snapshot.getConstructors()) {
+      blackhole.consume(constructor);
+    }
+    for (MethodDoc method : snapshot.getMethods()) {
+      blackhole.consume(method);
+    }
+  }
+
+  @Benchmark
+  public void accessPerElement(Blackhole blackhole) {
+    for (int i = 0; i < classDoc.fields().length; i++) {
+      if (classDoc.fields()[i].isPublic()) {
+        blackhole.consume(classDoc.fields()[i]);
+      }
+    }
+    for (int i = 0; i < classDoc.constructors().length; i++) {
+      if (classDoc.constructors()[i].isPublic()) {
+        blackhole.consume(classDoc.constructors()[i]);
+      }
+    }
+    for (int i = 0; i < classDoc.methods().length; i++) {
+      if (classDoc.methods()[i].isPublic()) {
+        blackhole.consume(classDoc.methods()[i]);
+      }
+    }
+  }
+
+  /**
+   * Builds a new array of the members, as the javadoc model does for the
+   * members included in the documentation.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T extends ProgramElementDoc> T[] copyIncluded(T[] members) {
+    List<T> included = new ArrayList<>();
+    for (T member : members) {
+      if (member.isIncluded()) {
+        included.add(member);
+      }
+    }
+    return included.toArray((T[]) Array.newInstance(members.getClass().getComponentType(), included.size()));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends ProgramElementDoc> T[] createMembers(Class<T> type, int count) {
+    T[] members = (T[]) Array.newInstance(type, count);
+    for (int i = 0; i < count; i++) {
+      String name = "member" + i;
+      members[i] = (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+              (proxy, method, args) -> {
+                switch (method.getName()) {
+                  case "isPublic":
+                  case "isIncluded":
+                    return true;
+                  case "name":
+                    return name;
+                  case "hashCode":
+                    return System.identityHashCode(proxy);
+                  case "equals":
+                    return proxy == args[0];
+                  default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+              });
+    }
+    return members;
+  }
+}
@@ -0,0 +1,47 @@
+package de.sky40.doclet;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link CommentTokenizer} with the regex based rendering it
+ * replaced on a typical method comment. Run with -prof gc for the
+ * allocation per comment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommentTokenizerBenchmark {
+
+  private static final String COMMENT = "Writes the content of the buffer to a stream, e.g. the response of a\n"
+          + "   * web service. The stream is not closed.\n"
+          + "   * <p>\n"
+          + "   * Uses {@link java.io.OutputStream#write(byte[], int, int)} for every chunk, so\n"
+          + "   * <code>out</code> should be buffered &amp; flushed by the caller. The\n"
+          + "   * content can be written as often as needed until {@code release()} is called.";
+
+  private final CommentTokenizer tokenizer = new CommentTokenizer();
+  private final LegacyCommentTokenizer legacy = new LegacyCommentTokenizer();
+
+  @Benchmark
+  public void tokenizer(Blackhole blackhole) {
+    tokenizer.tokenize(COMMENT, (style, text) -> blackhole.consume(text));
+  }
+
+  @Benchmark
+  public void legacyRegex(Blackhole blackhole) {
+    legacy.tokenize(COMMENT, (style, text) -> blackhole.consume(text));
+  }
+}
@@ -0,0 +1,60 @@
+package de.sky40.doclet;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that {@link CommentTokenizer} writes the same spans as the regex
+ * based rendering it replaced.
+ */
+public class CommentTokenizerTest {
+
+  /**
+   * The pieces random comments are made of, covering paragraphs, sentence
+   * ends, whitespace, tags, entities and inline tags, complete and broken.
+   */
+  private static final String[] PIECES = {
+    "Returns", "the", "value", "x", "A1", ".", ". ", ".\n", "。", "。 ", " ", "  ", "\t", "\n", "\r\n", " \n ",
+    "<p>", "<P>", " <p> ", "<p/>", "<b>", "</b>", "<code>", "</CODE>", "<br/>", "<Pre>", "<", ">", "</",
+    "&lt;", "&gt;", "&quot;", "&apos;", "&nbsp;", "&amp;", "&amp;lt;", "&", "&foo;", "&lt",
+    "{@link Foo}", "{@code a < b}", "{@literal}", "{@link  Foo#bar(int)}", "{@", "{@Link x}", "{", "}", "@"
+  };
+
+  private final CommentTokenizer tokenizer = new CommentTokenizer();
+  private final LegacyCommentTokenizer legacy = new LegacyCommentTokenizer();
+
+  @Test
+  public void typicalComments() {
+    assertSameSpans("");
+    assertSameSpans("Returns the value.");
+    assertSameSpans("Creates a writer.\n   * Second sentence. Third one.<p>\nA new paragraph with <b>bold</b> text.");
+    assertSameSpans("Compares {@code a &lt; b} with {@link java.util.List#size()}.");
+    assertSameSpans("日本語の説明。次の文。");
+    assertSameSpans("Trailing inline tag {@link Foo}");
+  }
+
+  @Test
+  public void randomCommentsMatchLegacyOutput() {
+    Random random = new Random(20261018L);
+    for (int n = 0; n < 50000; n++) {
+      StringBuilder comment = new StringBuilder();
+      int pieces = random.nextInt(24);
+      for (int i = 0; i < pieces; i++) {
+        comment.append(PIECES[random.nextInt(PIECES.length)]);
+      }
+      assertSameSpans(comment.toString());
+    }
+  }
+
+  private void assertSameSpans(String comment) {
+    List<String> expected = new ArrayList<>();
+    legacy.tokenize(comment, (style, text) -> expected.add(style + ":" + text));
+    List<String> actual = new ArrayList<>();
+    tokenizer.tokenize(comment, (style, text) -> actual.add(style + ":" + text));
+    assertEquals("spans of \"" + comment + "\"", expected, actual);
+  }
+}
@@ -0,0 +1,62 @@
+package de.sky40.doclet;
+
+import de.sky40.docxreader.domain.BuiltInStyle;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex based comment rendering {@link CommentTokenizer} replaced, kept
+ * as the reference of the output it has to produce.
+ */
+class LegacyCommentTokenizer {
+
+  /**
+   * Tokenizes a comment like DocumentBuilder.writeComment did before.
+   *
+   * @param str The comment text.
+   * @param handler The handler receiving the spans.
+   */
+  void tokenize(String str, CommentTokenizer.SpanHandler handler) {
+
+    String[] paragraphs = str.split("\\s*<(p|P)>\\s*");
+    for (int i = 0; i < paragraphs.length; i++) {
+      paragraphs[i] = paragraphs[i].replaceAll("\\s*[\\r\\n]+\\s*", " ");
+      paragraphs[i] = paragraphs[i].replaceAll("\\.\\s+", ".\n");
+      paragraphs[i] = paragraphs[i].replaceAll("。\\s*", "。\n");
+
+      String[] lines = paragraphs[i].split("\n");
+      for (int j = 0; j < lines.length; j++) {
+
+        String line = lines[j];
+
+        line = line.replaceAll("\\s*</?([a-z]+|[A-Z]+)>\\s*", " ");
+
+        line = line.replaceAll("&lt;", "<");
+        line = line.replaceAll("&gt;", ">");
+        line = line.replaceAll("&quot;", "\"");
+        line = line.replaceAll("&apos;", "'");
+        line = line.replaceAll("&nbsp;", " ");
+        line = line.replaceAll("&amp;", "&");
+
+        // Javadoc special comments like "{@link}"
+        Pattern p = Pattern.compile("\\{@([a-z]+)\\s*([^\\}]*)\\}");
+        Matcher m = p.matcher(line);
+        int pos = 0;
+        while (m.find()) {
+          handler.span(BuiltInStyle.COMMENT, line.substring(pos, m.start()));
+          pos = m.end();
+          String value = m.group(2);
+
+          if (!value.isEmpty()) {
+            handler.span(BuiltInStyle.SIGNATURE, value);
+          }
+        }
+
+        line = line.substring(pos);
+        if (!line.isEmpty()) {
+          handler.span(BuiltInStyle.COMMENT, line);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package de.sky40.docxreader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class BufferSinkTest {
+
+  private final BufferPool pool = new BufferPool(16, 1024);
+
+  @Test
+  public void committedBufferSurvivesTheNextPackage() throws IOException {
+    BufferSink sink = PackageSink.toBuffer(pool);
+    write(sink, "first package");
+    PooledBuffer first = sink.getBuffer();
+
+    write(sink, "second package, longer than the first");
+    PooledBuffer second = sink.getBuffer();
+
+    assertNotSame(first, second);
+    assertArrayEquals(bytes("first package"), first.toByteArray());
+    assertArrayEquals(bytes("second package, longer than the first"), second.toByteArray());
+    first.release();
+    second.release();
+  }
+
+  @Test
+  public void discardedPackageHasNoBuffer() throws IOException {
+    BufferSink sink = PackageSink.toBuffer(pool);
+    sink.open(false).write(ByteBuffer.wrap(bytes("partial")));
+    sink.discard();
+    assertNull(sink.getBuffer());
+  }
+
+  private static void write(BufferSink sink, String content) throws IOException {
+    sink.open(false).write(ByteBuffer.wrap(bytes(content)));
+    sink.commit();
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
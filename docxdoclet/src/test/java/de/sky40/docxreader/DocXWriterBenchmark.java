@@ -0,0 +1,77 @@
+package de.sky40.docxreader;
+
+import de.sky40.docxreader.domain.DocXReaderResult;
+import de.sky40.docxreader.domain.Style;
+import de.sky40.docxreader.domain.StyleName;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes the paragraphs, runs and breaks of typical method members into a
+ * fragment, as a class page does. Run with -prof gc for the allocation per
+ * member; expects the template in dist/template.docx of the working
+ * directory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocXWriterBenchmark {
+
+  private static final int MEMBERS = 50;
+
+  private DocXWriter document;
+  private Style method;
+  private Style signature;
+  private Style comment;
+  private Style heading;
+
+  @Setup
+  public void setUp() throws Exception {
+    DocXReaderResult template = new DocXReader().read(new File("dist/template.docx"));
+    document = new DocXWriter(template, "target/benchmark.docx");
+    method = document.findStyle(StyleName.with(StyleName.METHOD));
+    signature = document.findStyle(StyleName.with(StyleName.SIGNATURE));
+    comment = document.findStyle(StyleName.with(StyleName.COMMENT));
+    heading = document.findStyle(StyleName.with(StyleName.HEADING));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MEMBERS)
+  public DocXWriter writeMembers() {
+    DocXWriter fragment = document.createFragment();
+    for (int i = 0; i < MEMBERS; i++) {
+      fragment.addStyledParagraph(method, "getValue Method");
+      fragment.addStyledRun(signature, "public java.lang.String getValue (int index)");
+      fragment.addLineBreak();
+      fragment.addStyledRun(comment, "Gets the value at an index.");
+      fragment.addLineBreak();
+      fragment.addLineBreak();
+      fragment.addStyledConstantRun(heading, "Parameters:");
+      fragment.addLineBreak();
+      fragment.addStyledRun(comment, "        (1) index - The index of the value.");
+      fragment.addLineBreak();
+      fragment.addLineBreak();
+      fragment.addStyledConstantRun(heading, "returns:");
+      fragment.addLineBreak();
+      fragment.addStyledRun(comment, "        java.lang.String - The value.");
+      fragment.addLineBreak();
+      fragment.addHorizontalLine();
+    }
+    fragment.finishFragment();
+    return fragment;
+  }
+}